@@ -0,0 +1,150 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.acceptance.AccountCreator;
+import com.google.gerrit.acceptance.GerritServer;
+import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
+import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.api.GerritApi;
+import com.google.gerrit.extensions.api.changes.ChangeApi;
+import com.google.gerrit.extensions.api.changes.HashtagsInput;
+import com.google.gerrit.extensions.api.changes.ReviewInput;
+import com.google.gerrit.extensions.common.ChangeInput;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.inject.Injector;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link ChangeStatusReader#read} with parsing the full {@link ChangeNotes} through {@link
+ * ChangeNotes.Factory#createChecked} on the meta-ref of a long-lived change, made of {@code
+ * updates} NoteDb commits of votes and hashtags, with the {@code Status:} footer either at the tip,
+ * as for an abandoned change, or only at the root, as for an open change that was reviewed many
+ * times.
+ *
+ * <p>The change is created through the API of an in-memory Gerrit server, with the {@code
+ * change_notes} cache disabled so that every {@code createChecked} parses the notes again: the
+ * cache has no memory and evicts on the calling thread, as pending evictions would otherwise serve
+ * most of the calls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChangeStatusReaderBenchmark {
+
+  @Param({"10", "300"})
+  public int updates;
+
+  @Param({"tip", "root"})
+  public String statusFooter;
+
+  private TemporaryFolder temporaryFolder;
+  private GerritServer server;
+  private ChangeNotes.Factory changeNotesFactory;
+  private Project.NameKey project;
+  private Change.Id changeId;
+  private Repository repo;
+  private RevWalk rw;
+  private ChangeStatusReader statusReader;
+  private ObjectId metaRevision;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Config baseConfig = new Config();
+    baseConfig.setString("cache", "change_notes", "memoryLimit", "0");
+    baseConfig.setInt("cache", null, "threads", 0);
+    temporaryFolder = new TemporaryFolder();
+    temporaryFolder.create();
+    server =
+        GerritServer.initAndStart(
+            temporaryFolder,
+            GerritServer.Description.forTestClass(
+                Description.createSuiteDescription(ChangeStatusReaderBenchmark.class), "default"),
+            baseConfig,
+            null,
+            null,
+            null);
+    Injector injector = server.getTestInjector();
+    injector
+        .getInstance(RequestScopeOperations.class)
+        .setApiUser(injector.getInstance(AccountCreator.class).admin().id());
+    changeNotesFactory = injector.getInstance(ChangeNotes.Factory.class);
+    project = injector.getInstance(ProjectOperations.class).newProject().create();
+    changeId = createLongLivedChange(injector.getInstance(GerritApi.class));
+
+    repo = injector.getInstance(GitRepositoryManager.class).openRepository(project);
+    metaRevision = repo.exactRef(RefNames.changeMetaRef(changeId)).getObjectId();
+    rw = new RevWalk(repo);
+    statusReader = new ChangeStatusReader(rw);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    rw.close();
+    repo.close();
+    server.close();
+    temporaryFolder.delete();
+  }
+
+  @Benchmark
+  public Optional<ChangeState> read() throws Exception {
+    return statusReader.read(metaRevision);
+  }
+
+  @Benchmark
+  public ChangeNotes createChecked() {
+    return changeNotesFactory.createChecked(repo, project, changeId, metaRevision);
+  }
+
+  private Change.Id createLongLivedChange(GerritApi gApi) throws Exception {
+    ChangeApi change =
+        gApi.changes().create(new ChangeInput(project.get(), "master", "Long-lived change"));
+    for (int i = 1; i < updates; i++) {
+      if (i == updates - 1 && statusFooter.equals("tip")) {
+        change.abandon();
+      } else if (i % 10 == 0) {
+        change.current().review(ReviewInput.recommend());
+      } else {
+        change.setHashtags(new HashtagsInput(ImmutableSet.of("tag-" + i)));
+      }
+    }
+    return Change.id(change.get()._number);
+  }
+}
@@ -0,0 +1,293 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FilteredRefs;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.api.access.CoreOrPluginProjectPermission;
+import com.google.gerrit.extensions.conditions.BooleanCondition;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.InternalUser;
+import com.google.gerrit.server.permissions.PermissionBackend.ForProject;
+import com.google.gerrit.server.permissions.PermissionBackend.ForRef;
+import com.google.gerrit.server.permissions.PermissionBackend.RefFilterOptions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the hot path of the filter on a {@link SyntheticRepository}: the whole {@link
+ * ForProjectWrapper#filter} call, {@link FilterRefsConfig#isRefToShow}, the creation of {@link
+ * ChangeCacheKey}s and the {@link ChangeStateCache.Loader}, with cold and warm caches.
+ *
+ * <p>The ACLs of Gerrit are replaced by a {@link ForProject} which shows all the refs but a blocked
+ * branch, so that mostly the cost of this module is measured; {@code pruneBeforeAcl} compares the
+ * two orders of the pruning and of that per-ref ACL pass. The filter runs as an {@link
+ * InternalUser}, which is never memoized in the {@link FilteredRefsCache}, so every call filters
+ * the refs again. Run with {@code -prof gc}: the {@code gc.alloc.rate.norm} of the filter
+ * benchmarks divided by {@code refs} is the allocation per ref.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class ForProjectWrapperBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  public int refs;
+
+  @Param({"20"})
+  public int openPercent;
+
+  @Param({"60"})
+  public int mergedPercent;
+
+  @Param({"300"})
+  public int hideRules;
+
+  @Param({"false", "true"})
+  public boolean pruneBeforeAcl;
+
+  private SyntheticRepository syntheticRepo;
+  private Repository repo;
+  private FilterRefsConfig config;
+  private FilterRefsExecutor executor;
+  private ChangeStateCache.Loader loader;
+  private LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+  private Cache<FilteredRefsCache.Key, FilteredRefs> filteredRefsCache;
+  private LoadingCache<Project.NameKey, ProjectSettings> projectSettingsCache;
+  private LoadingCache<Project.NameKey, HiddenChangesIndex> hiddenChangesCache;
+  private CorruptChanges corruptChanges;
+  private FilterRefsMetrics metrics;
+  private ForProjectWrapper forProject;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    syntheticRepo = new SyntheticRepository(refs, openPercent, mergedPercent);
+    repo = syntheticRepo.repoManager.openRepository(syntheticRepo.project);
+
+    Config gerritConfig = new Config();
+    gerritConfig.setStringList(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_HIDE_REFS,
+        SyntheticRepository.hideRefs(hideRules));
+    gerritConfig.setBoolean(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_PRUNE_BEFORE_ACL,
+        pruneBeforeAcl);
+    config = new FilterRefsConfig(gerritConfig, null);
+    executor = new FilterRefsExecutor(config);
+    metrics = new FilterRefsMetrics(new DisabledMetricMaker());
+    corruptChanges = new CorruptChanges(CacheBuilder.newBuilder().build(), metrics);
+    loader =
+        new ChangeStateCache.Loader(
+            syntheticRepo.repoManager,
+            null,
+            metrics,
+            new ChangeStateStore(config, null),
+            corruptChanges);
+    changeStateCache = CacheBuilder.newBuilder().build(loader);
+
+    filteredRefsCache = CacheBuilder.newBuilder().build();
+    projectSettingsCache =
+        CacheBuilder.newBuilder()
+            .build(
+                CacheLoader.from(
+                    project ->
+                        ProjectSettings.create(
+                            SyntheticRepository.CLOSED_CHANGES_GRACE_TIME,
+                            Duration.ZERO,
+                            0,
+                            0,
+                            ImmutableSet.of(project))));
+    hiddenChangesCache = CacheBuilder.newBuilder().build(new HiddenChangesIndex.Loader());
+    forProject = newForProject();
+  }
+
+  private ForProjectWrapper newForProject() throws Exception {
+    return new ForProjectWrapper(
+        config,
+        executor,
+        metrics,
+        null,
+        changeStateCache,
+        filteredRefsCache,
+        projectSettingsCache,
+        hiddenChangesCache,
+        corruptChanges,
+        new OneBranchBlocked(),
+        syntheticRepo.project,
+        new InternalUser(),
+        config.getDefaultProfile());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.stop();
+    repo.close();
+  }
+
+  /**
+   * Cold cache: the state of every change is loaded from its meta-ref, without any hidden change
+   * indexed.
+   */
+  @State(Scope.Benchmark)
+  public static class ColdCache {
+    @Setup(Level.Invocation)
+    public void invalidate(ForProjectWrapperBenchmark benchmark) throws Exception {
+      benchmark.changeStateCache.invalidateAll();
+      benchmark.hiddenChangesCache.invalidateAll();
+      benchmark.forProject = benchmark.newForProject();
+    }
+  }
+
+  /**
+   * Warm cache: the state of every change is already cached, and the hidden changes are indexed by
+   * the first filter call.
+   */
+  @State(Scope.Benchmark)
+  public static class WarmCache {
+    @Setup(Level.Iteration)
+    public void warm(ForProjectWrapperBenchmark benchmark) throws Exception {
+      benchmark.changeStateCache.getAll(benchmark.syntheticRepo.changeKeys);
+    }
+  }
+
+  @Benchmark
+  public Collection<Ref> filterColdCache(ColdCache cold) throws Exception {
+    return forProject.filter(syntheticRepo.refs, repo, RefFilterOptions.defaults());
+  }
+
+  @Benchmark
+  public Collection<Ref> filterWarmCache(WarmCache warm) throws Exception {
+    return forProject.filter(syntheticRepo.refs, repo, RefFilterOptions.defaults());
+  }
+
+  @Benchmark
+  public void isRefToShow(Blackhole bh) {
+    for (Ref ref : syntheticRepo.refs) {
+      bh.consume(config.isRefToShow(ref));
+    }
+  }
+
+  @Benchmark
+  public void createChangeCacheKeys(Blackhole bh) {
+    for (Ref ref : syntheticRepo.refs) {
+      Change.Id changeId = Change.Id.fromRef(ref.getName());
+      if (changeId != null) {
+        bh.consume(ChangeCacheKey.create(changeId, ref.getObjectId(), syntheticRepo.project));
+      }
+    }
+  }
+
+  @Benchmark
+  public void loadChangeStates(Blackhole bh) throws Exception {
+    for (ChangeCacheKey key : syntheticRepo.changeKeys) {
+      bh.consume(loader.load(key));
+    }
+  }
+
+  @Benchmark
+  public Map<ChangeCacheKey, ChangeState> loadAllChangeStates() throws Exception {
+    return loader.loadAll(syntheticRepo.changeKeys);
+  }
+
+  @Benchmark
+  public Map<ChangeCacheKey, ChangeState> getAllChangeStatesColdCache(ColdCache cold)
+      throws Exception {
+    return executor.getAll(changeStateCache, syntheticRepo.changeKeys);
+  }
+
+  @Benchmark
+  public Map<ChangeCacheKey, ChangeState> getAllChangeStatesWarmCache(WarmCache warm)
+      throws Exception {
+    return executor.getAll(changeStateCache, syntheticRepo.changeKeys);
+  }
+
+  /**
+   * Shows all the refs but {@link #BLOCKED_REF}, as for a user who can read the whole project
+   * except one branch: the refs are checked one by one, like Gerrit does without the fast path of a
+   * project readable on {@code refs/*}.
+   */
+  private static class OneBranchBlocked extends ForProject {
+    private static final String BLOCKED_REF = "refs/heads/secret";
+
+    @Override
+    public String resourcePath() {
+      return "/projects/synthetic";
+    }
+
+    @Override
+    public ForRef ref(String ref) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void check(CoreOrPluginProjectPermission perm) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends CoreOrPluginProjectPermission> Set<T> test(Collection<T> permSet) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BooleanCondition testCond(CoreOrPluginProjectPermission perm) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<Ref> filter(Collection<Ref> refs, Repository repo, RefFilterOptions opts) {
+      List<Ref> visibleRefs = new ArrayList<>(refs.size());
+      for (Ref ref : refs) {
+        if (!ref.getName().equals(BLOCKED_REF)) {
+          visibleRefs.add(ref);
+        }
+      }
+      return visibleRefs;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.RefNames;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the classification of a ref name by {@link RefClassifier} with the parsing of the same
+ * name by {@link Change.Id#fromRef}, {@link PatchSet.Id#fromRef} and {@link
+ * RefNames#isNoteDbMetaRef}, on a mix of ref names shaped like the ones of a Gerrit repository.
+ *
+ * <p>The scores are per ref name; run with {@code -prof gc} for the allocations per ref name.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefClassifierBenchmark {
+  private static final int REF_NAMES = 100_000;
+
+  private final String[] refNames = new String[REF_NAMES];
+
+  @Setup
+  public void setUp() {
+    Account.Id accountId = Account.id(1000042);
+    for (int i = 0; i < REF_NAMES; i++) {
+      Change.Id changeId = Change.id(1 + i / 4);
+      refNames[i] =
+          switch (i % 20) {
+            case 0 -> RefNames.REFS_HEADS + "branch-" + i;
+            case 1 -> RefNames.REFS_TAGS + "v" + i;
+            case 2 -> RefNames.refsEdit(accountId, changeId, PatchSet.id(changeId, 1));
+            case 3 -> RefNames.REFS_CACHE_AUTOMERGE + "01/23456789abcdef0123456789abcdef01234567";
+            case 4, 9, 14 -> RefNames.changeMetaRef(changeId);
+            case 19 -> RefNames.changeRefPrefix(changeId) + "robot-comments";
+            default -> RefNames.patchSetRef(PatchSet.id(changeId, 1 + i % 3));
+          };
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(REF_NAMES)
+  public void classify(Blackhole bh) {
+    for (String refName : refNames) {
+      long ref = RefClassifier.classify(refName);
+      RefClassifier.Kind kind = RefClassifier.kind(ref);
+      bh.consume(kind == RefClassifier.Kind.USERS || kind == RefClassifier.Kind.EDIT);
+      bh.consume(kind == RefClassifier.Kind.AUTOMERGE);
+      bh.consume(kind == RefClassifier.Kind.META || kind == RefClassifier.Kind.ROBOT_COMMENTS);
+      bh.consume(RefClassifier.changeNum(ref));
+      bh.consume(RefClassifier.patchSet(ref));
+    }
+  }
+
+  /** The checks run on every ref name by the filter before {@link RefClassifier}. */
+  @Benchmark
+  @OperationsPerInvocation(REF_NAMES)
+  public void parseWithGerrit(Blackhole bh) {
+    for (String refName : refNames) {
+      bh.consume(refName.startsWith(RefNames.REFS_USERS));
+      bh.consume(refName.startsWith(RefNames.REFS_CACHE_AUTOMERGE));
+      bh.consume(RefNames.isNoteDbMetaRef(refName));
+      bh.consume(Change.Id.fromRef(refName));
+      bh.consume(PatchSet.Id.fromRef(refName));
+    }
+  }
+}
@@ -0,0 +1,161 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.update.context.RefUpdateContext;
+import com.google.gerrit.server.update.context.RefUpdateContext.RefUpdateType;
+import com.google.gerrit.testing.InMemoryRepositoryManager;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+/**
+ * In-memory repository with a given number of refs, mostly of changes, and a given mix of open,
+ * merged and abandoned changes.
+ *
+ * <p>Each change has a patch-set ref and a meta-ref whose single commit records its status. The
+ * closed changes are last updated at random instants over twice the grace time, so that about half
+ * of them are hidden. One tenth of the refs are branches, half of which under {@code
+ * refs/teams/team-<n>/}, spread over {@link #TEAMS} teams.
+ */
+class SyntheticRepository {
+  static final int TEAMS = 1000;
+  static final Duration CLOSED_CHANGES_GRACE_TIME = Duration.ofDays(1);
+
+  private static final long SEED = 42L;
+
+  final InMemoryRepositoryManager repoManager = new InMemoryRepositoryManager();
+  final Project.NameKey project;
+  final ImmutableList<Ref> refs;
+  final ImmutableList<ChangeCacheKey> changeKeys;
+
+  SyntheticRepository(int refCount, int openPercent, int mergedPercent) throws Exception {
+    project = Project.nameKey("synthetic-" + refCount);
+    try (Repository repo = repoManager.createRepository(project)) {
+      populate(repo, refCount, openPercent, mergedPercent);
+      refs = ImmutableList.copyOf(repo.getRefDatabase().getRefs());
+    }
+    changeKeys =
+        refs.stream()
+            .filter(ref -> RefNames.isNoteDbMetaRef(ref.getName()))
+            .map(
+                ref ->
+                    ChangeCacheKey.create(
+                        Change.Id.fromRef(ref.getName()), ref.getObjectId(), project))
+            .collect(ImmutableList.toImmutableList());
+  }
+
+  private static void populate(Repository repo, int refCount, int openPercent, int mergedPercent)
+      throws IOException {
+    Random random = new Random(SEED);
+    Instant now = Instant.now();
+    int branchCount = refCount / 10;
+    int changeCount = (refCount - branchCount) / 2;
+    BatchRefUpdate bru = repo.getRefDatabase().newBatchUpdate().setAllowNonFastForwards(true);
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      ObjectId emptyTree = ins.insert(Constants.OBJ_TREE, new byte[0]);
+      ObjectId patchSet = insertCommit(ins, emptyTree, "Patch set\n", now);
+
+      for (int i = 0; i < branchCount; i++) {
+        String branch =
+            i % 2 == 0
+                ? RefNames.REFS_HEADS + "branch-" + i
+                : "refs/teams/team-" + (i % TEAMS) + "/branch-" + i;
+        bru.addCommand(new ReceiveCommand(ObjectId.zeroId(), patchSet, branch));
+      }
+
+      for (int i = 1; i <= changeCount; i++) {
+        Change.Id changeId = Change.id(i);
+        int percentile = i % 100;
+        Change.Status status;
+        Instant lastUpdatedOn;
+        if (percentile < openPercent) {
+          status = Change.Status.NEW;
+          lastUpdatedOn = now;
+        } else {
+          status =
+              percentile < openPercent + mergedPercent
+                  ? Change.Status.MERGED
+                  : Change.Status.ABANDONED;
+          lastUpdatedOn =
+              now.minusSeconds(random.nextInt((int) CLOSED_CHANGES_GRACE_TIME.toSeconds() * 2));
+        }
+        ObjectId meta =
+            insertCommit(
+                ins,
+                emptyTree,
+                String.format(
+                    "Update patch set 1\n\nPatch-set: 1\nStatus: %s\n",
+                    status.name().toLowerCase(Locale.US)),
+                lastUpdatedOn);
+        bru.addCommand(
+            new ReceiveCommand(
+                ObjectId.zeroId(), patchSet, RefNames.patchSetRef(PatchSet.id(changeId, 1))));
+        bru.addCommand(
+            new ReceiveCommand(ObjectId.zeroId(), meta, RefNames.changeMetaRef(changeId)));
+      }
+      ins.flush();
+    }
+
+    try (RefUpdateContext ctx = RefUpdateContext.open(RefUpdateType.OFFLINE_OPERATION);
+        RevWalk rw = new RevWalk(repo)) {
+      bru.execute(rw, NullProgressMonitor.INSTANCE);
+    }
+    for (ReceiveCommand cmd : bru.getCommands()) {
+      if (cmd.getResult() != ReceiveCommand.Result.OK) {
+        throw new IOException(
+            String.format("Unable to create %s: %s", cmd.getRefName(), cmd.getResult()));
+      }
+    }
+  }
+
+  private static ObjectId insertCommit(
+      ObjectInserter ins, ObjectId tree, String message, Instant when) throws IOException {
+    PersonIdent ident =
+        new PersonIdent("Gerrit Code Review", "gerrit@example.com", when, ZoneOffset.UTC);
+    CommitBuilder cb = new CommitBuilder();
+    cb.setTreeId(tree);
+    cb.setAuthor(ident);
+    cb.setCommitter(ident);
+    cb.setMessage(message);
+    return ins.insert(cb);
+  }
+
+  /** Hides the branches of {@code hideRules} teams, one rule per team. */
+  static List<String> hideRefs(int hideRules) {
+    ImmutableList.Builder<String> rules = ImmutableList.builder();
+    for (int i = 0; i < hideRules; i++) {
+      rules.add("refs/teams/team-" + (i * 2) + "/");
+    }
+    return rules.build();
+  }
+}
@@ -11,25 +11,19 @@
 
 package com.gerritforge.gerrit.modules.gitrefsfilter;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.auto.value.AutoValue;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
-import java.util.concurrent.atomic.AtomicReference;
-
-import com.gerritforge.gerrit.modules.gitrefsfilter.AutoValue_ChangeCacheKey;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
+import java.nio.ByteBuffer;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Repository;
 
 @AutoValue
 public abstract class ChangeCacheKey {
-  /* `repo` and `changeId` need to be part of the cache key because the
-  Loader requires them in order to fetch the relevant changeNote. */
-  private final AtomicReference<Repository> repo = new AtomicReference<>();
-
-  public final Repository repo() {
-    return repo.get();
-  }
 
   public abstract Change.Id changeId();
 
@@ -39,12 +33,44 @@ public abstract class ChangeCacheKey {
   public abstract Project.NameKey project();
 
   static ChangeCacheKey create(
-      Repository repo,
-      Change.Id changeId,
-      @Nullable ObjectId changeRevision,
-      Project.NameKey project) {
-    ChangeCacheKey cacheKey = new AutoValue_ChangeCacheKey(changeId, changeRevision, project);
-    cacheKey.repo.set(repo);
-    return cacheKey;
+      Change.Id changeId, @Nullable ObjectId changeRevision, Project.NameKey project) {
+    return new AutoValue_ChangeCacheKey(changeId, changeRevision, project);
+  }
+
+  /**
+   * Serializes the key as the change number, the optional change revision and the project name, so
+   * that it can be stored in the persisted cache.
+   */
+  enum Serializer implements CacheSerializer<ChangeCacheKey> {
+    INSTANCE;
+
+    private static final int FIXED_LENGTH = Integer.BYTES + 1 + Constants.OBJECT_ID_LENGTH;
+
+    @Override
+    public byte[] serialize(ChangeCacheKey key) {
+      byte[] project = key.project().get().getBytes(UTF_8);
+      ByteBuffer buf = ByteBuffer.allocate(FIXED_LENGTH + project.length);
+      buf.putInt(key.changeId().get());
+      ObjectId changeRevision = key.changeRevision();
+      if (changeRevision != null) {
+        buf.put((byte) 1);
+        changeRevision.copyRawTo(buf.array(), buf.position());
+      } else {
+        buf.put((byte) 0);
+      }
+      buf.position(FIXED_LENGTH);
+      buf.put(project);
+      return buf.array();
+    }
+
+    @Override
+    public ChangeCacheKey deserialize(byte[] in) {
+      ByteBuffer buf = ByteBuffer.wrap(in);
+      Change.Id changeId = Change.id(buf.getInt());
+      ObjectId changeRevision = buf.get() == 1 ? ObjectId.fromRaw(in, buf.position()) : null;
+      Project.NameKey project =
+          Project.nameKey(new String(in, FIXED_LENGTH, in.length - FIXED_LENGTH, UTF_8));
+      return create(changeId, changeRevision, project);
+    }
   }
 }
@@ -0,0 +1,250 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.gerrit.entities.Change;
+import java.time.Instant;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The changes of the refs of a single filter call, keyed by their primitive change number: the
+ * revision of their advertised meta-ref, their last advertised patch set, the resolution of their
+ * state and whether any of their refs is advertised.
+ *
+ * <p>The changes are kept in an open addressing hash table with linear probing, like {@link
+ * HiddenChangesIndex}, so that the filter does not allocate boxed keys or map entries per ref. The
+ * table is not thread safe.
+ */
+final class ChangeRefsTable {
+
+  enum Resolution {
+    /** The state of the change has not been looked up yet. */
+    UNRESOLVED,
+    /** The change has no meta-ref, therefore its refs are not filtered. */
+    UNTRACKED,
+    /** The change is indexed as closed and hidden by the {@link HiddenChangesIndex}. */
+    INDEXED_AS_HIDDEN,
+    /**
+     * The state of the change is being loaded from the change state cache, or is still loading in
+     * the background when the time budget of the filter call ran out.
+     */
+    LOADING,
+    /** The state of the change is loaded, or unknown if it could not be loaded. */
+    LOADED,
+    /** The state of the change cannot be loaded and it is recorded in {@link CorruptChanges}. */
+    CORRUPT
+  }
+
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  private static final int EMPTY = 0;
+
+  // Change numbers are positive, therefore EMPTY marks a free slot
+  private int[] changeNums = new int[INITIAL_CAPACITY];
+  private ObjectId[] metaRevisions = new ObjectId[INITIAL_CAPACITY];
+  private int[] lastPatchSets = new int[INITIAL_CAPACITY];
+  private Resolution[] resolutions = new Resolution[INITIAL_CAPACITY];
+  private ChangeCacheKey[] keys = new ChangeCacheKey[INITIAL_CAPACITY];
+  private ChangeState[] states = new ChangeState[INITIAL_CAPACITY];
+  private boolean[] advertised = new boolean[INITIAL_CAPACITY];
+  private int size;
+  private int advertisedChanges;
+
+  /**
+   * Returns the slot of the change, adding it if missing. Slots are stable until the next change is
+   * added.
+   */
+  int add(int changeNum) {
+    int slot = HiddenChangesIndex.slot(changeNums, changeNum);
+    if (changeNums[slot] == EMPTY) {
+      if (2 * (size + 1) > changeNums.length) {
+        resize();
+        slot = HiddenChangesIndex.slot(changeNums, changeNum);
+      }
+      changeNums[slot] = changeNum;
+      resolutions[slot] = Resolution.UNRESOLVED;
+      size++;
+    }
+    return slot;
+  }
+
+  void setMetaRevision(int slot, ObjectId metaRevision) {
+    metaRevisions[slot] = metaRevision;
+  }
+
+  void addPatchSet(int slot, int patchSet) {
+    lastPatchSets[slot] = Math.max(lastPatchSets[slot], patchSet);
+  }
+
+  int changeNum(int slot) {
+    return changeNums[slot];
+  }
+
+  /** Revision of the advertised meta-ref of the change, or null if it is not advertised. */
+  ObjectId metaRevision(int slot) {
+    return metaRevisions[slot];
+  }
+
+  /** Last advertised patch set of the change, or 0 if none is advertised. */
+  int lastPatchSet(int slot) {
+    return lastPatchSets[slot];
+  }
+
+  Resolution resolution(int slot) {
+    return resolutions[slot];
+  }
+
+  void setResolution(int slot, Resolution resolution) {
+    resolutions[slot] = resolution;
+  }
+
+  /** Marks the change as {@link Resolution#LOADING} the state identified by the key. */
+  void setLoading(int slot, ChangeCacheKey key) {
+    resolutions[slot] = Resolution.LOADING;
+    keys[slot] = key;
+  }
+
+  /** Marks the change as {@link Resolution#LOADED}, with a null state if it is unknown. */
+  void setLoaded(int slot, ChangeState state) {
+    resolutions[slot] = Resolution.LOADED;
+    states[slot] = state;
+  }
+
+  /**
+   * Marks the change as {@link Resolution#CORRUPT}, with the state of a change closed when it was
+   * detected as corrupt, so that its refs are hidden after the same grace time as closed changes.
+   */
+  void setCorrupt(int slot, Instant detectedOn) {
+    resolutions[slot] = Resolution.CORRUPT;
+    states[slot] = ChangeState.create(Change.Status.ABANDONED, detectedOn.toEpochMilli());
+  }
+
+  ChangeCacheKey key(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * State of a {@link Resolution#LOADED} or {@link Resolution#CORRUPT} change, or null if it is
+   * unknown.
+   */
+  ChangeState state(int slot) {
+    return states[slot];
+  }
+
+  /** Marks the change as having at least one advertised ref. */
+  void setAdvertised(int slot) {
+    if (!advertised[slot]) {
+      advertised[slot] = true;
+      advertisedChanges++;
+    }
+  }
+
+  /** Number of changes with at least one advertised ref. */
+  int advertisedChanges() {
+    return advertisedChanges;
+  }
+
+  /**
+   * Returns the lowest change number among the {@code limit} advertised changes with the highest
+   * change numbers, or 0 if at most {@code limit} changes are advertised.
+   *
+   * <p>The changes are selected with a min-heap bounded to {@code limit} change numbers, rather
+   * than by sorting all the advertised changes.
+   */
+  int lowestOfLatestAdvertised(int limit) {
+    if (advertisedChanges <= limit) {
+      return 0;
+    }
+    int[] heap = new int[limit];
+    int heapSize = 0;
+    for (int slot = 0; slot < changeNums.length; slot++) {
+      if (!advertised[slot]) {
+        continue;
+      }
+      int changeNum = changeNums[slot];
+      if (heapSize < limit) {
+        heap[heapSize] = changeNum;
+        siftUp(heap, heapSize++);
+      } else if (changeNum > heap[0]) {
+        heap[0] = changeNum;
+        siftDown(heap, limit);
+      }
+    }
+    return heap[0];
+  }
+
+  private static void siftUp(int[] heap, int index) {
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (heap[parent] <= heap[index]) {
+        return;
+      }
+      swap(heap, parent, index);
+      index = parent;
+    }
+  }
+
+  private static void siftDown(int[] heap, int heapSize) {
+    int index = 0;
+    while (true) {
+      int smallest = index;
+      int left = 2 * index + 1;
+      int right = left + 1;
+      if (left < heapSize && heap[left] < heap[smallest]) {
+        smallest = left;
+      }
+      if (right < heapSize && heap[right] < heap[smallest]) {
+        smallest = right;
+      }
+      if (smallest == index) {
+        return;
+      }
+      swap(heap, smallest, index);
+      index = smallest;
+    }
+  }
+
+  private static void swap(int[] heap, int i, int j) {
+    int tmp = heap[i];
+    heap[i] = heap[j];
+    heap[j] = tmp;
+  }
+
+  private void resize() {
+    int[] oldChangeNums = changeNums;
+    ObjectId[] oldMetaRevisions = metaRevisions;
+    int[] oldLastPatchSets = lastPatchSets;
+    Resolution[] oldResolutions = resolutions;
+    ChangeCacheKey[] oldKeys = keys;
+    ChangeState[] oldStates = states;
+    boolean[] oldAdvertised = advertised;
+    int capacity = oldChangeNums.length * 2;
+    changeNums = new int[capacity];
+    metaRevisions = new ObjectId[capacity];
+    lastPatchSets = new int[capacity];
+    resolutions = new Resolution[capacity];
+    keys = new ChangeCacheKey[capacity];
+    states = new ChangeState[capacity];
+    advertised = new boolean[capacity];
+    for (int i = 0; i < oldChangeNums.length; i++) {
+      if (oldChangeNums[i] != EMPTY) {
+        int slot = HiddenChangesIndex.slot(changeNums, oldChangeNums[i]);
+        changeNums[slot] = oldChangeNums[i];
+        metaRevisions[slot] = oldMetaRevisions[i];
+        lastPatchSets[slot] = oldLastPatchSets[i];
+        resolutions[slot] = oldResolutions[i];
+        keys[slot] = oldKeys[i];
+        states[slot] = oldStates[i];
+        advertised[slot] = oldAdvertised[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.auto.value.AutoValue;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+
+/** State of a change at a given meta revision, as needed for filtering its refs. */
+@AutoValue
+public abstract class ChangeState {
+
+  public abstract Change.Status status();
+
+  /** Last update of the change, in milliseconds since the epoch. */
+  public abstract long lastUpdatedOn();
+
+  public boolean isOpen() {
+    return status().isOpen();
+  }
+
+  /**
+   * Instant after which the change refs are hidden, given the grace time for closed changes. Open
+   * changes are never hidden.
+   *
+   * <p>The grace time is a project setting that can change without the change meta-ref moving,
+   * therefore the hide-after instant is derived on read rather than stored in the cache.
+   */
+  public Instant hideAfter(Duration closedChangesGraceTime) {
+    return hideAfter(closedChangesGraceTime, Duration.ZERO);
+  }
+
+  /**
+   * Instant after which the change refs are hidden, given the grace time for closed changes and the
+   * inactivity time after which open changes are considered stale. A zero or negative stale time
+   * never hides open changes.
+   */
+  public Instant hideAfter(Duration closedChangesGraceTime, Duration staleOpenChangeTime) {
+    if (isOpen()) {
+      if (staleOpenChangeTime.isZero() || staleOpenChangeTime.isNegative()) {
+        return Instant.MAX;
+      }
+      return Instant.ofEpochMilli(lastUpdatedOn()).plus(staleOpenChangeTime);
+    }
+    return Instant.ofEpochMilli(lastUpdatedOn()).plus(closedChangesGraceTime);
+  }
+
+  public static ChangeState create(Change.Status status, long lastUpdatedOn) {
+    return new AutoValue_ChangeState(status, lastUpdatedOn);
+  }
+
+  /** Serializes the state as the status code followed by the last update timestamp. */
+  enum Serializer implements CacheSerializer<ChangeState> {
+    INSTANCE;
+
+    @Override
+    public byte[] serialize(ChangeState state) {
+      return ByteBuffer.allocate(1 + Long.BYTES)
+          .put((byte) state.status().getCode())
+          .putLong(state.lastUpdatedOn())
+          .array();
+    }
+
+    @Override
+    public ChangeState deserialize(byte[] in) {
+      ByteBuffer buf = ByteBuffer.wrap(in);
+      return create(Change.Status.forCode((char) buf.get()), buf.getLong());
+    }
+  }
+}
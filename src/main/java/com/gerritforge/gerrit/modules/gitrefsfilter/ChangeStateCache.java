@@ -0,0 +1,158 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+public class ChangeStateCache {
+  public static final String CHANGE_STATE_CACHE = "change_state";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        persist(CHANGE_STATE_CACHE, ChangeCacheKey.class, ChangeState.class)
+            .version(1)
+            .keySerializer(ChangeCacheKey.Serializer.INSTANCE)
+            .valueSerializer(ChangeState.Serializer.INSTANCE)
+            .loader(Loader.class);
+      }
+    };
+  }
+
+  @Singleton
+  static class Loader extends CacheLoader<ChangeCacheKey, ChangeState> {
+    private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+    private final GitRepositoryManager repoManager;
+    private final ChangeNotes.Factory changeNotesFactory;
+    private final FilterRefsMetrics metrics;
+    private final ChangeStateStore store;
+    private final CorruptChanges corruptChanges;
+
+    @Inject
+    Loader(
+        GitRepositoryManager repoManager,
+        ChangeNotes.Factory changeNotesFactory,
+        FilterRefsMetrics metrics,
+        ChangeStateStore store,
+        CorruptChanges corruptChanges) {
+      this.repoManager = repoManager;
+      this.changeNotesFactory = changeNotesFactory;
+      this.metrics = metrics;
+      this.store = store;
+      this.corruptChanges = corruptChanges;
+    }
+
+    @Override
+    public ChangeState load(ChangeCacheKey key) throws Exception {
+      ChangeState storedState = store.get(key);
+      if (storedState != null) {
+        return storedState;
+      }
+      try (Repository repo = repoManager.openRepository(key.project());
+          RevWalk rw = new RevWalk(repo)) {
+        return load(repo, new ChangeStatusReader(rw), key);
+      }
+    }
+
+    /**
+     * Loads the state of many changes opening each project repository only once, so that all the
+     * meta commits of a project are read through the same walk and object reader caches.
+     *
+     * <p>Changes that fail to load are recorded in {@link CorruptChanges} and left out of the
+     * result, while {@link FilterRefsExecutor#getAll} keeps the states of the other changes.
+     */
+    @Override
+    public Map<ChangeCacheKey, ChangeState> loadAll(Iterable<? extends ChangeCacheKey> keys)
+        throws Exception {
+      Map<ChangeCacheKey, ChangeState> changeStates = new HashMap<>();
+      ImmutableList.Builder<ChangeCacheKey> missingKeys = ImmutableList.builder();
+      for (ChangeCacheKey key : keys) {
+        ChangeState storedState = store.get(key);
+        if (storedState != null) {
+          changeStates.put(key, storedState);
+        } else {
+          missingKeys.add(key);
+        }
+      }
+      ImmutableListMultimap<Project.NameKey, ChangeCacheKey> keysByProject =
+          Multimaps.index(missingKeys.build(), ChangeCacheKey::project);
+      for (Map.Entry<Project.NameKey, Collection<ChangeCacheKey>> projectKeys :
+          keysByProject.asMap().entrySet()) {
+        try (Repository repo = repoManager.openRepository(projectKeys.getKey());
+            RevWalk rw = new RevWalk(repo)) {
+          ChangeStatusReader statusReader = new ChangeStatusReader(rw);
+          for (ChangeCacheKey key : projectKeys.getValue()) {
+            try {
+              changeStates.put(key, load(repo, statusReader, key));
+            } catch (IOException | RuntimeException e) {
+              logger.atFine().withCause(e).log(
+                  "Unable to load change '%d' of project '%s'",
+                  key.changeId().get(), key.project());
+            }
+          }
+        }
+      }
+      return changeStates;
+    }
+
+    private ChangeState load(Repository repo, ChangeStatusReader statusReader, ChangeCacheKey key)
+        throws IOException {
+      try (Timer0.Context ctx = metrics.changeStateLoadLatency.start()) {
+        ChangeState changeState = loadChangeState(repo, statusReader, key);
+        store.put(key, changeState);
+        return changeState;
+      } catch (IOException | RuntimeException e) {
+        metrics.changeStateLoadFailures.increment();
+        corruptChanges.record(key, e);
+        throw e;
+      }
+    }
+
+    private ChangeState loadChangeState(
+        Repository repo, ChangeStatusReader statusReader, ChangeCacheKey key) throws IOException {
+      if (key.changeRevision() != null) {
+        Optional<ChangeState> changeState = statusReader.read(key.changeRevision());
+        if (changeState.isPresent()) {
+          return changeState.get();
+        }
+      }
+
+      Change change =
+          changeNotesFactory
+              .createChecked(repo, key.project(), key.changeId(), key.changeRevision())
+              .getChange();
+      return ChangeState.create(change.getStatus(), change.getLastUpdatedOn().toEpochMilli());
+    }
+  }
+}
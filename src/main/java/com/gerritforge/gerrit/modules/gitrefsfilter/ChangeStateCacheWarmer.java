@@ -0,0 +1,110 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+
+import com.google.common.cache.LoadingCache;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Loads the state of a change into the {@code change_state} cache as soon as its meta-ref is
+ * updated, so that the next fetch does not pay for reading it. The other NoteDb refs, such as the
+ * robot comments of a change or the drafts and stars of All-Users, are not meta commits of the
+ * change and are ignored.
+ *
+ * <p>The updates are queued to a bounded pool of background threads and dropped when the queue is
+ * full: the dropped changes are loaded lazily by the next fetch as usual.
+ */
+@Singleton
+public class ChangeStateCacheWarmer implements GitReferenceUpdatedListener, LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+  private final FilterRefsMetrics metrics;
+  @Nullable private final ThreadPoolExecutor executor;
+
+  @Inject
+  ChangeStateCacheWarmer(
+      FilterRefsConfig config,
+      FilterRefsMetrics metrics,
+      @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache) {
+    this.changeStateCache = changeStateCache;
+    this.metrics = metrics;
+    int threads = config.getCacheWarmerThreads();
+    this.executor =
+        threads == 0
+            ? null
+            : new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getCacheWarmerQueueSize()),
+                new ThreadFactoryBuilder()
+                    .setNameFormat("git-refs-filter-warmer-%d")
+                    .setDaemon(true)
+                    .build(),
+                (task, pool) -> metrics.changeStateWarmerDropped.increment());
+  }
+
+  @Override
+  public void onGitReferenceUpdated(Event event) {
+    if (executor == null || event.isDelete()) {
+      return;
+    }
+    long ref = RefClassifier.classify(event.getRefName());
+    if (RefClassifier.kind(ref) != RefClassifier.Kind.META) {
+      return;
+    }
+    ChangeCacheKey key =
+        ChangeCacheKey.create(
+            Change.id(RefClassifier.changeNum(ref)),
+            ObjectId.fromString(event.getNewObjectId()),
+            Project.nameKey(event.getProjectName()));
+    executor.execute(() -> warm(key));
+  }
+
+  private void warm(ChangeCacheKey key) {
+    try {
+      changeStateCache.get(key);
+    } catch (ExecutionException | RuntimeException e) {
+      logger.atFine().withCause(e).log(
+          "Unable to warm the state of change '%d' of project '%s'",
+          key.changeId().get(), key.project());
+    }
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,240 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Exports the entries of the {@code change_state} cache to a snapshot file and imports them back,
+ * so that a new node can start with the cache of a warm one.
+ *
+ * <p>The snapshot is a versioned binary file holding, for each project, its name followed by the
+ * change number, meta revision, status and last update of its changes. On import, an entry is added
+ * to the cache only when its meta revision is still the current one of the change. The import on
+ * start runs in a background thread, so that it does not delay the start of the server.
+ */
+@Singleton
+public class ChangeStateSnapshot implements LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int MAGIC = 0x47525353;
+  private static final int VERSION = 1;
+
+  private final FilterRefsConfig config;
+  private final SitePaths sitePaths;
+  private final GitRepositoryManager repoManager;
+  private final LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+  @Nullable private ExecutorService importExecutor;
+
+  @Inject
+  ChangeStateSnapshot(
+      FilterRefsConfig config,
+      SitePaths sitePaths,
+      GitRepositoryManager repoManager,
+      @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache) {
+    this.config = config;
+    this.sitePaths = sitePaths;
+    this.repoManager = repoManager;
+    this.changeStateCache = changeStateCache;
+  }
+
+  /** Directory of the snapshot files exported on demand, and of the default snapshot file. */
+  public Path snapshotDirectory() {
+    return sitePaths.data_dir.resolve("git-refs-filter");
+  }
+
+  /** Snapshot file configured with {@code git-refs-filter.snapshotFile}, or the default one. */
+  public Path defaultFile() {
+    if (config.getSnapshotFile() != null) {
+      return sitePaths.resolve(config.getSnapshotFile());
+    }
+    return snapshotDirectory().resolve("change_state.snapshot");
+  }
+
+  /**
+   * Writes the in-memory entries of the {@code change_state} cache to the file, replacing it
+   * atomically.
+   *
+   * @return the number of entries written
+   */
+  public int exportTo(Path file) throws IOException {
+    ImmutableListMultimap<Project.NameKey, Map.Entry<ChangeCacheKey, ChangeState>> entries =
+        Multimaps.index(
+            changeStateCache.asMap().entrySet().stream()
+                .filter(e -> e.getKey().changeRevision() != null)
+                .iterator(),
+            e -> e.getKey().project());
+
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), "snapshot", ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.keySet().size());
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        for (Map.Entry<Project.NameKey, Collection<Map.Entry<ChangeCacheKey, ChangeState>>>
+            projectEntries : entries.asMap().entrySet()) {
+          byte[] project = projectEntries.getKey().get().getBytes(UTF_8);
+          out.writeInt(project.length);
+          out.write(project);
+          out.writeInt(projectEntries.getValue().size());
+          for (Map.Entry<ChangeCacheKey, ChangeState> entry : projectEntries.getValue()) {
+            out.writeInt(entry.getKey().changeId().get());
+            entry.getKey().changeRevision().copyRawTo(rawId, 0);
+            out.write(rawId);
+            out.writeByte(entry.getValue().status().getCode());
+            out.writeLong(entry.getValue().lastUpdatedOn());
+          }
+        }
+      }
+      Files.move(
+          tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+    return entries.size();
+  }
+
+  /**
+   * Adds the entries of the snapshot file to the {@code change_state} cache, skipping the ones
+   * whose meta revision is no longer the current one of the change.
+   *
+   * @return the number of entries imported
+   */
+  public int importFrom(Path file) throws IOException {
+    int imported = 0;
+    int skipped = 0;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(String.format("%s is not a change states snapshot", file));
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException(
+            String.format(
+                "Unsupported version %d of the change states snapshot %s", version, file));
+      }
+      int projects = in.readInt();
+      byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+      for (int p = 0; p < projects; p++) {
+        byte[] projectName = new byte[in.readInt()];
+        in.readFully(projectName);
+        Project.NameKey project = Project.nameKey(new String(projectName, UTF_8));
+        int changes = in.readInt();
+        try (Repository repo = openRepository(project)) {
+          RefDatabase refDb = repo == null ? null : repo.getRefDatabase();
+          for (int c = 0; c < changes; c++) {
+            Change.Id changeId = Change.id(in.readInt());
+            in.readFully(rawId);
+            ObjectId changeRevision = ObjectId.fromRaw(rawId);
+            ChangeState state =
+                ChangeState.create(Change.Status.forCode((char) in.readByte()), in.readLong());
+            if (refDb != null && isCurrent(refDb, changeId, changeRevision)) {
+              changeStateCache.put(ChangeCacheKey.create(changeId, changeRevision, project), state);
+              imported++;
+            } else {
+              skipped++;
+            }
+          }
+        }
+      }
+    }
+    logger.atInfo().log(
+        "Imported %d change states from %s, skipped %d stale ones", imported, file, skipped);
+    return imported;
+  }
+
+  private Repository openRepository(Project.NameKey project) throws IOException {
+    try {
+      return repoManager.openRepository(project);
+    } catch (RepositoryNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static boolean isCurrent(RefDatabase refDb, Change.Id changeId, ObjectId changeRevision)
+      throws IOException {
+    Ref metaRef = refDb.exactRef(RefNames.changeMetaRef(changeId));
+    return metaRef != null && changeRevision.equals(metaRef.getObjectId());
+  }
+
+  @Override
+  public void start() {
+    if (!config.isImportSnapshotOnStart()) {
+      return;
+    }
+    Path file = defaultFile();
+    importExecutor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("git-refs-filter-snapshot-import")
+                .setDaemon(true)
+                .build());
+    importExecutor.execute(
+        () -> {
+          try {
+            importFrom(file);
+          } catch (NoSuchFileException e) {
+            logger.atInfo().log("No change states snapshot %s to import", file);
+          } catch (IOException | RuntimeException e) {
+            logger.atWarning().withCause(e).log(
+                "Unable to import the change states snapshot %s", file);
+          }
+        });
+  }
+
+  @Override
+  public void stop() {
+    if (importExecutor != null) {
+      importExecutor.shutdownNow();
+    }
+  }
+}
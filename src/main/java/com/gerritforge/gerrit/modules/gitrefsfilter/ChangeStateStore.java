@@ -0,0 +1,360 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilterRefsConfig.ChangeStateStoreType;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.events.ProjectDeletedListener;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Off-heap store of the change states, backing the {@code change_state} cache when {@code
+ * git-refs-filter.changeStateStore} is set to {@code mmap}.
+ *
+ * <p>Each project has a memory-mapped file of fixed-width records indexed by change number, holding
+ * the meta revision, the status and the last update of the change. The file is updated whenever the
+ * state of a change is loaded and survives restarts, so that the {@code change_state} cache can be
+ * kept small and its misses served without reading NoteDb. The file of a project is deleted with
+ * the project, or when the caches of the project are flushed.
+ */
+@Singleton
+public class ChangeStateStore implements LifecycleListener, ProjectDeletedListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String FILE_SUFFIX = ".states";
+  static final String CHANGE_STATE_STORE = "change_state_store";
+
+  @Nullable private final Path directory;
+  private final ConcurrentMap<Project.NameKey, ProjectFile> projectFiles =
+      new ConcurrentHashMap<>();
+
+  @Inject
+  ChangeStateStore(FilterRefsConfig config, SitePaths sitePaths) {
+    if (config.getChangeStateStoreType() != ChangeStateStoreType.MMAP) {
+      directory = null;
+    } else if (config.getChangeStateStoreDirectory() != null) {
+      directory = sitePaths.resolve(config.getChangeStateStoreDirectory());
+    } else {
+      directory = sitePaths.data_dir.resolve("git-refs-filter");
+    }
+  }
+
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /** Returns the stored state of the change at the meta revision of the key, or null. */
+  @Nullable
+  ChangeState get(ChangeCacheKey key) {
+    ProjectFile projectFile = projectFile(key);
+    if (projectFile == null) {
+      return null;
+    }
+    long record = projectFile.read(key.changeId().get(), key.changeRevision());
+    if (record == ProjectFile.MISSING) {
+      return null;
+    }
+    return ChangeState.create(
+        Change.Status.forCode(ProjectFile.status(record)), ProjectFile.lastUpdatedOn(record));
+  }
+
+  /** Stores the state of the change at the meta revision of the key. */
+  void put(ChangeCacheKey key, ChangeState state) {
+    ProjectFile projectFile = projectFile(key);
+    if (projectFile == null) {
+      return;
+    }
+    try {
+      projectFile.write(
+          key.changeId().get(),
+          key.changeRevision(),
+          state.status().getCode(),
+          state.lastUpdatedOn());
+    } catch (IOException e) {
+      logger.atWarning().atMostEvery(1, TimeUnit.MINUTES).withCause(e).log(
+          "Unable to store the state of change '%d' of project '%s'",
+          key.changeId().get(), key.project());
+    }
+  }
+
+  /**
+   * Deletes the file of the project, so that the states of its changes are loaded from NoteDb
+   * again.
+   *
+   * @return whether the file existed.
+   */
+  boolean delete(Project.NameKey project) {
+    if (directory == null) {
+      return false;
+    }
+    Path file = directory.resolve(project.get() + FILE_SUFFIX);
+    AtomicBoolean deleted = new AtomicBoolean();
+    // Hold the entry of the project so that the file is not opened again while being deleted
+    projectFiles.compute(
+        project,
+        (p, projectFile) -> {
+          try {
+            if (projectFile != null) {
+              projectFile.close();
+            }
+            deleted.set(Files.deleteIfExists(file));
+          } catch (IOException e) {
+            logger.atWarning().withCause(e).log(
+                "Unable to delete the change state store %s of project '%s'", file, project);
+          }
+          return null;
+        });
+    return deleted.get();
+  }
+
+  @Override
+  public void onProjectDeleted(ProjectDeletedListener.Event event) {
+    delete(Project.nameKey(event.getProjectName()));
+  }
+
+  @Nullable
+  private ProjectFile projectFile(ChangeCacheKey key) {
+    if (directory == null || key.changeRevision() == null) {
+      return null;
+    }
+    ProjectFile projectFile = projectFiles.get(key.project());
+    if (projectFile != null) {
+      return projectFile;
+    }
+    return projectFiles.computeIfAbsent(key.project(), this::open);
+  }
+
+  @Nullable
+  private ProjectFile open(Project.NameKey project) {
+    Path file = directory.resolve(project.get() + FILE_SUFFIX);
+    try {
+      Files.createDirectories(file.getParent());
+      return ProjectFile.open(file);
+    } catch (IOException e) {
+      logger.atWarning().atMostEvery(1, TimeUnit.MINUTES).withCause(e).log(
+          "Unable to open the change state store %s of project '%s'", file, project);
+      return null;
+    }
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    for (ProjectFile projectFile : projectFiles.values()) {
+      try {
+        projectFile.close();
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Unable to close the change state store");
+      }
+    }
+    projectFiles.clear();
+  }
+
+  /**
+   * Memory-mapped file of the change states of a project, made of a header followed by segments of
+   * {@link #SEGMENT_CHANGES} fixed-width records, mapped lazily. The record of a change is at a
+   * fixed offset derived from its number, so that the changes not stored are holes of the file.
+   *
+   * <p>Lookups are allocation-free and lock-free unless they overlap with a write. A record is
+   * written with a zero status first and its status last, so that a partially written record is
+   * never read as valid.
+   */
+  static class ProjectFile implements AutoCloseable {
+    static final long MISSING = -1L;
+
+    static final int SEGMENT_CHANGES = 1 << 16;
+    static final int RECORD_SIZE = 32;
+    private static final long SEGMENT_SIZE = (long) SEGMENT_CHANGES * RECORD_SIZE;
+    private static final int STATUS_OFFSET = Constants.OBJECT_ID_LENGTH;
+    private static final int LAST_UPDATED_ON_OFFSET = 24;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC = 0x47524653;
+    private static final int VERSION = 1;
+
+    private static final int STATUS_SHIFT = 56;
+    private static final long LAST_UPDATED_ON_MASK = (1L << STATUS_SHIFT) - 1;
+
+    private final FileChannel channel;
+    private final StampedLock lock = new StampedLock();
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    // Grows only under the write lock, when a segment is added beyond the end of the file
+    private volatile long size;
+
+    /**
+     * Opens the file of a project, creating it or discarding its content when it has an unknown
+     * format.
+     */
+    static ProjectFile open(Path file) throws IOException {
+      FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+      try {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE
+            || channel.read(header, 0) < HEADER_SIZE
+            || header.getInt(0) != MAGIC
+            || header.getInt(Integer.BYTES) != VERSION) {
+          channel.truncate(0);
+          header.clear();
+          header.putInt(MAGIC).putInt(VERSION).position(0);
+          channel.write(header, 0);
+        }
+        return new ProjectFile(channel, channel.size());
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    private ProjectFile(FileChannel channel, long size) {
+      this.channel = channel;
+      this.size = size;
+    }
+
+    static char status(long record) {
+      return (char) (record >>> STATUS_SHIFT);
+    }
+
+    static long lastUpdatedOn(long record) {
+      return record & LAST_UPDATED_ON_MASK;
+    }
+
+    /**
+     * Returns the status and last update of the change packed in a long, see {@link #status(long)}
+     * and {@link #lastUpdatedOn(long)}, or {@link #MISSING} if the change is not stored at the
+     * given meta revision.
+     */
+    long read(int changeNum, AnyObjectId metaRevision) {
+      MappedByteBuffer segment;
+      try {
+        segment = segment(changeNum / SEGMENT_CHANGES, false);
+      } catch (IOException e) {
+        logger.atWarning().atMostEvery(1, TimeUnit.MINUTES).withCause(e).log(
+            "Unable to map the change state store segment of change '%d'", changeNum);
+        return MISSING;
+      }
+      if (segment == null) {
+        return MISSING;
+      }
+      int offset = (changeNum % SEGMENT_CHANGES) * RECORD_SIZE;
+      long stamp = lock.tryOptimisticRead();
+      long record = readRecord(segment, offset, metaRevision);
+      if (!lock.validate(stamp)) {
+        stamp = lock.readLock();
+        try {
+          record = readRecord(segment, offset, metaRevision);
+        } finally {
+          lock.unlockRead(stamp);
+        }
+      }
+      return record;
+    }
+
+    void write(int changeNum, AnyObjectId metaRevision, char status, long lastUpdatedOn)
+        throws IOException {
+      MappedByteBuffer segment = segment(changeNum / SEGMENT_CHANGES, true);
+      int offset = (changeNum % SEGMENT_CHANGES) * RECORD_SIZE;
+      long stamp = lock.writeLock();
+      try {
+        segment.put(offset + STATUS_OFFSET, (byte) 0);
+        for (int i = 0; i < Constants.OBJECT_ID_LENGTH; i++) {
+          segment.put(offset + i, (byte) metaRevision.getByte(i));
+        }
+        segment.putLong(offset + LAST_UPDATED_ON_OFFSET, lastUpdatedOn & LAST_UPDATED_ON_MASK);
+        segment.put(offset + STATUS_OFFSET, (byte) status);
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private static long readRecord(MappedByteBuffer segment, int offset, AnyObjectId metaRevision) {
+      byte status = segment.get(offset + STATUS_OFFSET);
+      if (status == 0) {
+        return MISSING;
+      }
+      for (int i = 0; i < Constants.OBJECT_ID_LENGTH; i++) {
+        if (segment.get(offset + i) != (byte) metaRevision.getByte(i)) {
+          return MISSING;
+        }
+      }
+      return ((long) status << STATUS_SHIFT)
+          | (segment.getLong(offset + LAST_UPDATED_ON_OFFSET) & LAST_UPDATED_ON_MASK);
+    }
+
+    /**
+     * Returns the mapped segment, mapping it first if needed. A segment beyond the end of the file
+     * is added only when {@code create} is true, and null is returned otherwise, without locking.
+     */
+    @Nullable
+    private MappedByteBuffer segment(int index, boolean create) throws IOException {
+      MappedByteBuffer[] current = segments;
+      if (index < current.length && current[index] != null) {
+        return current[index];
+      }
+      long position = HEADER_SIZE + index * SEGMENT_SIZE;
+      if (!create && size < position + SEGMENT_SIZE) {
+        return null;
+      }
+      long stamp = lock.writeLock();
+      try {
+        current = segments;
+        if (index < current.length && current[index] != null) {
+          return current[index];
+        }
+        MappedByteBuffer segment =
+            channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE);
+        size = Math.max(size, position + SEGMENT_SIZE);
+        MappedByteBuffer[] updated = Arrays.copyOf(current, Math.max(current.length, index + 1));
+        updated[index] = segment;
+        segments = updated;
+        return segment;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (MappedByteBuffer segment : segments) {
+        if (segment != null) {
+          segment.force();
+        }
+      }
+      channel.close();
+    }
+  }
+}
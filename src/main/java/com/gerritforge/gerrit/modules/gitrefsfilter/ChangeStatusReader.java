@@ -0,0 +1,71 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.gerrit.server.notedb.ChangeNoteFooters.FOOTER_STATUS;
+
+import com.google.common.base.Enums;
+import com.google.gerrit.entities.Change;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Reads the status and last update of a change from its NoteDb meta-ref, without parsing the full
+ * {@link com.google.gerrit.server.notedb.ChangeNotes}.
+ *
+ * <p>The status is taken from the most recent {@code Status:} footer, walking back from the tip of
+ * the meta-ref only when the tip commit does not have one. The last update is the commit time of
+ * the tip.
+ */
+class ChangeStatusReader {
+  private final RevWalk rw;
+
+  /**
+   * @param rw walk used for reading the meta commits, which can be shared across many changes of
+   *     the same repository to keep its object caches warm.
+   */
+  ChangeStatusReader(RevWalk rw) {
+    this.rw = rw;
+  }
+
+  /**
+   * Returns the state of the change at the given meta revision, or empty when the footers are
+   * ambiguous and the full change notes need to be parsed instead.
+   */
+  Optional<ChangeState> read(ObjectId metaRevision) throws IOException {
+    rw.reset();
+    RevCommit tip = rw.parseCommit(metaRevision);
+    rw.markStart(tip);
+    for (RevCommit commit : rw) {
+      List<String> statusFooters = commit.getFooterLines(FOOTER_STATUS);
+      if (statusFooters.isEmpty()) {
+        continue;
+      }
+      if (statusFooters.size() > 1) {
+        return Optional.empty();
+      }
+      return Optional.ofNullable(
+              Enums.getIfPresent(Change.Status.class, statusFooters.get(0).toUpperCase(Locale.US))
+                  .orNull())
+          .map(
+              status ->
+                  ChangeState.create(
+                      status, tip.getCommitterIdent().getWhenAsInstant().toEpochMilli()));
+    }
+    return Optional.empty();
+  }
+}
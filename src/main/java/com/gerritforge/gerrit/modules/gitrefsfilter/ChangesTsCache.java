@@ -1,52 +0,0 @@
-// Copyright (C) 2025 GerritForge, Inc.
-//
-// Licensed under the BSL 1.1 (the "License");
-// you may not use this file except in compliance with the License.
-//
-// Unless required by applicable law or agreed to in writing, software
-// distributed under the License is distributed on an "AS IS" BASIS,
-// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-// See the License for the specific language governing permissions and
-// limitations under the License.
-package com.gerritforge.gerrit.modules.gitrefsfilter;
-
-import com.google.common.cache.CacheLoader;
-import com.google.gerrit.server.cache.CacheModule;
-import com.google.gerrit.server.notedb.ChangeNotes;
-import com.google.inject.Inject;
-import com.google.inject.Module;
-import com.google.inject.Singleton;
-import com.google.inject.TypeLiteral;
-
-public class ChangesTsCache {
-  public static final String CHANGES_CACHE_TS = "changes_ts";
-
-  public static Module module() {
-    return new CacheModule() {
-      @Override
-      protected void configure() {
-        cache(CHANGES_CACHE_TS, ChangeCacheKey.class, new TypeLiteral<Long>() {})
-            .loader(Loader.class);
-      }
-    };
-  }
-
-  @Singleton
-  static class Loader extends CacheLoader<ChangeCacheKey, Long> {
-    private final ChangeNotes.Factory changeNotesFactory;
-
-    @Inject
-    Loader(ChangeNotes.Factory changeNotesFactory) {
-      this.changeNotesFactory = changeNotesFactory;
-    }
-
-    @Override
-    public Long load(ChangeCacheKey key) throws Exception {
-      return changeNotesFactory
-          .createChecked(key.repo(), key.project(), key.changeId(), key.changeRevision())
-          .getChange()
-          .getLastUpdatedOn()
-          .toEpochMilli();
-    }
-  }
-}
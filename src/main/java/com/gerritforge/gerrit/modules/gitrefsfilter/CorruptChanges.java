@@ -0,0 +1,127 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Changes whose state cannot be loaded at a given meta revision, e.g. because their NoteDb is
+ * corrupt, so that the filter hides them like closed changes instead of loading them again on every
+ * fetch.
+ *
+ * <p>The entries are keyed by meta revision, therefore a change is looked up again as soon as its
+ * meta-ref moves. A corrupt change is loaded again once every {@link #RETRY_INTERVAL}, so that the
+ * changes that failed to load because of a transient error are eventually shown again, while a
+ * change that keeps failing keeps the time it was first detected, after which it is hidden. The
+ * entries of the changes no longer failing expire after {@code cache.corrupt_changes.maxAge}.
+ */
+@Singleton
+public class CorruptChanges {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  public static final String CORRUPT_CHANGES_CACHE = "corrupt_changes";
+
+  /** Interval after which the state of a corrupt change is loaded again. */
+  static final Duration RETRY_INTERVAL = Duration.ofHours(1);
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CORRUPT_CHANGES_CACHE, ChangeCacheKey.class, Detection.class)
+            .maximumWeight(10_000)
+            .expireAfterWrite(Duration.ofDays(1));
+      }
+    };
+  }
+
+  /** First and last failure to load a change at a given meta revision. */
+  @AutoValue
+  public abstract static class Detection {
+    public abstract Instant detectedOn();
+
+    public abstract Instant lastFailedOn();
+
+    static Detection create(Instant detectedOn, Instant lastFailedOn) {
+      return new AutoValue_CorruptChanges_Detection(detectedOn, lastFailedOn);
+    }
+  }
+
+  private final Cache<ChangeCacheKey, Detection> corruptChanges;
+  private final FilterRefsMetrics metrics;
+  private final Clock clock;
+
+  @Inject
+  CorruptChanges(
+      @Named(CORRUPT_CHANGES_CACHE) Cache<ChangeCacheKey, Detection> corruptChanges,
+      FilterRefsMetrics metrics) {
+    this(corruptChanges, metrics, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  CorruptChanges(
+      Cache<ChangeCacheKey, Detection> corruptChanges, FilterRefsMetrics metrics, Clock clock) {
+    this.corruptChanges = corruptChanges;
+    this.metrics = metrics;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns when the change was first detected as corrupt, or null if it is not known to be corrupt
+   * or is due for loading again.
+   */
+  @Nullable
+  Instant detectedOn(ChangeCacheKey key) {
+    Detection detection = corruptChanges.getIfPresent(key);
+    if (detection == null
+        || clock.instant().isAfter(detection.lastFailedOn().plus(RETRY_INTERVAL))) {
+      return null;
+    }
+    return detection.detectedOn();
+  }
+
+  /**
+   * Records the change as corrupt, logging and counting it only the first time it is detected at
+   * its meta revision. A failure to load it again keeps the time of the first detection.
+   */
+  void record(ChangeCacheKey key, Throwable cause) {
+    Instant now = clock.instant();
+    Detection firstDetection = Detection.create(now, now);
+    Detection detection =
+        corruptChanges
+            .asMap()
+            .merge(
+                key,
+                firstDetection,
+                (previous, failure) ->
+                    Detection.create(previous.detectedOn(), failure.lastFailedOn()));
+    if (detection == firstDetection) {
+      metrics.corruptChanges.increment();
+      logger.atWarning().withCause(cause).log(
+          "Unable to load change '%d' of project '%s' at meta revision %s. Hide it as corrupt",
+          key.changeId().get(), key.project(), ObjectId.toString(key.changeRevision()));
+    }
+  }
+}
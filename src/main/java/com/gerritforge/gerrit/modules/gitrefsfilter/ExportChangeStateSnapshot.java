@@ -0,0 +1,90 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+/**
+ * REST endpoint exporting the {@code change_state} cache to a snapshot file of the server:
+ *
+ * <pre>
+ * POST /config/server/git-refs-filter-export
+ * </pre>
+ *
+ * <p>The snapshot is written to the configured {@code snapshotFile}, or to a file named by the
+ * input in the {@link ChangeStateSnapshot#snapshotDirectory()}, so that an export cannot overwrite
+ * any other file of the server.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.MAINTAIN_SERVER)
+public class ExportChangeStateSnapshot
+    implements RestModifyView<ConfigResource, ExportChangeStateSnapshot.Input> {
+  public static final String VIEW_NAME = "git-refs-filter-export";
+
+  public static class Input {
+    /** Name of the snapshot file in the snapshot directory, the configured file when not set. */
+    public String file;
+  }
+
+  public static class SnapshotInfo {
+    public String file;
+    public int entries;
+  }
+
+  private final ChangeStateSnapshot snapshot;
+
+  @Inject
+  ExportChangeStateSnapshot(ChangeStateSnapshot snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  @Override
+  public Response<SnapshotInfo> apply(ConfigResource resource, Input input)
+      throws BadRequestException, IOException {
+    Path file =
+        input == null || Strings.isNullOrEmpty(input.file)
+            ? snapshot.defaultFile()
+            : snapshotFile(input.file);
+    SnapshotInfo info = new SnapshotInfo();
+    info.entries = snapshot.exportTo(file);
+    info.file = file.toString();
+    return Response.ok(info);
+  }
+
+  private Path snapshotFile(String name) throws BadRequestException {
+    Path directory = snapshot.snapshotDirectory().normalize();
+    Path file;
+    try {
+      file = directory.resolve(name).normalize();
+    } catch (InvalidPathException e) {
+      throw new BadRequestException(String.format("Invalid snapshot file name '%s'", name), e);
+    }
+    // Rejects absolute paths, sub-directories, '..' and the files of the change state store
+    if (!directory.equals(file.getParent())
+        || file.getFileName().toString().endsWith(ChangeStateStore.FILE_SUFFIX)) {
+      throw new BadRequestException(
+          String.format("Snapshot file '%s' must be a file name in %s", name, directory));
+    }
+    return file;
+  }
+}
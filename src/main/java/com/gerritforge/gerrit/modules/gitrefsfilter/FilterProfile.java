@@ -0,0 +1,62 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.auto.value.AutoValue;
+import com.google.gerrit.common.Nullable;
+import java.time.Duration;
+import java.util.Optional;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * Filtering rules applied to the users of a group, defined in a {@code git-refs-filter} subsection
+ * of {@code gerrit.config}. The default profile holds the rules of the main {@code git-refs-filter}
+ * section and applies to the users not matching any other profile.
+ *
+ * <p>Profiles are compiled once when the module starts and shared by all the users they apply to.
+ */
+@AutoValue
+public abstract class FilterProfile {
+  static final String DEFAULT_PROFILE = "";
+
+  /** Name of the profile, empty for the default profile. */
+  public abstract String name();
+
+  /** Name or UUID of the group the profile applies to, null for the default profile. */
+  @Nullable
+  public abstract String group();
+
+  /** Grace time for closed changes, overriding the project setting when present. */
+  public abstract Optional<Duration> closedChangesGraceTime();
+
+  abstract RefPatternMatcher hideRefsMatcher();
+
+  /**
+   * Whether the ref is not hidden by the hideRefs rules of the profile. The rule matching the
+   * longest part of the ref name wins, see {@link RefPatternMatcher}.
+   */
+  public boolean isRefToShow(Ref ref) {
+    return hideRefsMatcher().isShown(ref.getName());
+  }
+
+  public boolean isDefault() {
+    return name().isEmpty();
+  }
+
+  static FilterProfile create(
+      String name,
+      @Nullable String group,
+      Optional<Duration> closedChangesGraceTime,
+      RefPatternMatcher hideRefsMatcher) {
+    return new AutoValue_FilterProfile(name, group, closedChangesGraceTime, hideRefsMatcher);
+  }
+}
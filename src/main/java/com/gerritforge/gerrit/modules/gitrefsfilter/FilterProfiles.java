@@ -0,0 +1,87 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.GroupReference;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.GroupBackend;
+import com.google.gerrit.server.account.GroupBackends;
+import com.google.gerrit.server.account.GroupMembership;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the {@link FilterProfile} of a user: the first profile, in the order of {@code
+ * gerrit.config}, whose group the user is a member of, or the default profile otherwise.
+ */
+@Singleton
+public class FilterProfiles {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final GroupBackend groupBackend;
+  private final ImmutableList<FilterProfile> profiles;
+  private final FilterProfile defaultProfile;
+  private final Map<String, AccountGroup.UUID> resolvedGroups = new ConcurrentHashMap<>();
+
+  @Inject
+  FilterProfiles(FilterRefsConfig config, GroupBackend groupBackend) {
+    this.groupBackend = groupBackend;
+    this.profiles = config.getProfiles();
+    this.defaultProfile = config.getDefaultProfile();
+  }
+
+  public FilterProfile forUser(CurrentUser user) {
+    if (profiles.isEmpty()) {
+      return defaultProfile;
+    }
+    GroupMembership groups = user.getEffectiveGroups();
+    for (FilterProfile profile : profiles) {
+      Optional<AccountGroup.UUID> groupUuid = resolveGroup(profile);
+      if (groupUuid.isPresent() && groups.contains(groupUuid.get())) {
+        return profile;
+      }
+    }
+    return defaultProfile;
+  }
+
+  /**
+   * Resolves the group of a profile by UUID or by exact name. Only successful resolutions are
+   * remembered, so that a group created after the module started is picked up.
+   */
+  private Optional<AccountGroup.UUID> resolveGroup(FilterProfile profile) {
+    String group = profile.group();
+    AccountGroup.UUID groupUuid = resolvedGroups.get(group);
+    if (groupUuid != null) {
+      return Optional.of(groupUuid);
+    }
+
+    groupUuid = AccountGroup.uuid(group);
+    if (!groupBackend.handles(groupUuid) || groupBackend.get(groupUuid) == null) {
+      GroupReference groupRef = GroupBackends.findExactSuggestion(groupBackend, group);
+      if (groupRef == null) {
+        logger.atWarning().atMostEvery(1, TimeUnit.MINUTES).log(
+            "Group '%s' of git-refs-filter profile '%s' not found", group, profile.name());
+        return Optional.empty();
+      }
+      groupUuid = groupRef.getUUID();
+    }
+    resolvedGroups.put(group, groupUuid);
+    return Optional.of(groupUuid);
+  }
+}
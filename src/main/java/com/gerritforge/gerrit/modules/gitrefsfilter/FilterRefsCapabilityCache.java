@@ -0,0 +1,129 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.server.audit.group.GroupAuditListener;
+import com.google.gerrit.server.audit.group.GroupMemberAuditEvent;
+import com.google.gerrit.server.audit.group.GroupSubgroupAuditEvent;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.permissions.DefaultPermissionBackend;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.time.Duration;
+
+/**
+ * Memoizes, per account, whether the user has the {@link FilterRefsCapability}, so that resolving
+ * the projects of a filtered user does not evaluate the global capabilities again.
+ */
+public class FilterRefsCapabilityCache {
+  public static final String FILTER_REFS_CAPABILITY_CACHE = "filter_refs_capability";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(FILTER_REFS_CAPABILITY_CACHE, Account.Id.class, Boolean.class)
+            .maximumWeight(10_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .loader(Loader.class);
+        DynamicSet.bind(binder(), GroupAuditListener.class).to(Invalidator.class);
+        DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(Invalidator.class);
+      }
+    };
+  }
+
+  /**
+   * Evaluates the capability for a fresh user of the account, rather than for the user of the
+   * caller, whose groups may have been resolved before the latest group membership updates.
+   */
+  @Singleton
+  static class Loader extends CacheLoader<Account.Id, Boolean> {
+    private final DefaultPermissionBackend defaultBackend;
+    private final FilterRefsPermission filterRefsPermission;
+
+    @Inject
+    Loader(DefaultPermissionBackend defaultBackend, FilterRefsPermission filterRefsPermission) {
+      this.defaultBackend = defaultBackend;
+      this.filterRefsPermission = filterRefsPermission;
+    }
+
+    @Override
+    public Boolean load(Account.Id accountId) {
+      return defaultBackend.absentUser(accountId).testOrFalse(filterRefsPermission);
+    }
+  }
+
+  /**
+   * Invalidates the accounts whose group membership changes, and all of them when a subgroup or the
+   * All-Projects capabilities change. Changes of external groups, e.g. LDAP, are not notified and
+   * are picked up when the entries expire.
+   */
+  @Singleton
+  static class Invalidator implements GroupAuditListener, GitReferenceUpdatedListener {
+    private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+    private final LoadingCache<Account.Id, Boolean> capabilityCache;
+    private final AllProjectsName allProjects;
+
+    @Inject
+    Invalidator(
+        @Named(FILTER_REFS_CAPABILITY_CACHE) LoadingCache<Account.Id, Boolean> capabilityCache,
+        AllProjectsName allProjects) {
+      this.capabilityCache = capabilityCache;
+      this.allProjects = allProjects;
+    }
+
+    @Override
+    public void onAddMembers(GroupMemberAuditEvent event) {
+      capabilityCache.invalidateAll(event.getModifiedMembers());
+    }
+
+    @Override
+    public void onDeleteMembers(GroupMemberAuditEvent event) {
+      capabilityCache.invalidateAll(event.getModifiedMembers());
+    }
+
+    @Override
+    public void onAddSubgroups(GroupSubgroupAuditEvent event) {
+      invalidateAll("subgroups added to group " + event.getUpdatedGroup().get());
+    }
+
+    @Override
+    public void onDeleteSubgroups(GroupSubgroupAuditEvent event) {
+      invalidateAll("subgroups removed from group " + event.getUpdatedGroup().get());
+    }
+
+    @Override
+    public void onGitReferenceUpdated(Event event) {
+      if (allProjects.get().equals(event.getProjectName())
+          && RefNames.REFS_CONFIG.equals(event.getRefName())) {
+        invalidateAll("global capabilities updated");
+      }
+    }
+
+    private void invalidateAll(String reason) {
+      logger.atFine().log(
+          "Invalidating all the %s entries: %s", FILTER_REFS_CAPABILITY_CACHE, reason);
+      capabilityCache.invalidateAll();
+    }
+  }
+}
@@ -11,30 +11,105 @@
 
 package com.gerritforge.gerrit.modules.gitrefsfilter;
 
+import com.google.common.base.Enums;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
-import com.google.gerrit.entities.Project;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.config.ConfigUtil;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
-import com.google.gerrit.server.project.NoSuchProjectException;
+import com.google.gerrit.server.project.ProjectState;
 import com.google.inject.Inject;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Ref;
 
 public class FilterRefsConfig {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   public static final String SECTION_GIT_REFS_FILTER = "git-refs-filter";
   public static final String KEY_HIDE_REFS = "hideRefs";
+  public static final String KEY_HIDE_REF_KINDS = "hideRefKinds";
+  public static final String KEY_PRUNE_BEFORE_ACL = "pruneBeforeAcl";
+  public static final String KEY_EXECUTOR = "executor";
+  public static final String KEY_PARALLELISM = "parallelism";
+  public static final String KEY_EXECUTOR_QUEUE_SIZE = "executorQueueSize";
+  public static final String KEY_SEQUENTIAL_THRESHOLD = "sequentialThreshold";
+  public static final String KEY_FILTER_TIME_BUDGET = "filterTimeBudget";
+  public static final String KEY_CACHE_WARMER_THREADS = "cacheWarmerThreads";
+  public static final String KEY_CACHE_WARMER_QUEUE_SIZE = "cacheWarmerQueueSize";
+  public static final String KEY_CHANGE_STATE_STORE = "changeStateStore";
+  public static final String KEY_CHANGE_STATE_STORE_DIRECTORY = "changeStateStoreDirectory";
+  public static final String KEY_SNAPSHOT_FILE = "snapshotFile";
+  public static final String KEY_IMPORT_SNAPSHOT_ON_START = "importSnapshotOnStart";
+  public static final String KEY_PROFILE_GROUP = "group";
+  public static final String KEY_PROFILE_CLOSED_CHANGES_GRACE_TIME_SEC =
+      "closedChangesGraceTimeSec";
   public static final String PROJECT_CONFIG_CLOSED_CHANGES_GRACE_TIME_SEC =
       "gitRefFilterClosedChangesGraceTimeSec";
+  public static final String PROJECT_CONFIG_STALE_OPEN_CHANGE_SEC =
+      "gitRefFilterStaleOpenChangeSec";
+  public static final String PROJECT_CONFIG_KEEP_LAST_PATCH_SETS = "gitRefFilterKeepLastPatchSets";
+  public static final String PROJECT_CONFIG_MAX_ADVERTISED_CHANGES =
+      "gitRefFilterMaxAdvertisedChanges";
 
   static final long CLOSED_CHANGES_GRACE_TIME_SEC_DEFAULT =
       TimeUnit.SECONDS.convert(24, TimeUnit.HOURS);
+  static final long STALE_OPEN_CHANGE_SEC_DEFAULT = 0;
+  static final int KEEP_LAST_PATCH_SETS_DEFAULT = 0;
+  static final int MAX_ADVERTISED_CHANGES_DEFAULT = 0;
+  static final int EXECUTOR_QUEUE_SIZE_DEFAULT = 1_000;
+  static final int SEQUENTIAL_THRESHOLD_DEFAULT = 256;
+  static final int CACHE_WARMER_THREADS_DEFAULT = 1;
+  static final int CACHE_WARMER_QUEUE_SIZE_DEFAULT = 10_000;
+  static final String HIDE_REF_KINDS_NONE = "none";
+
+  /** Kinds of refs which can be hidden by {@code hideRefKinds}. */
+  static final ImmutableSet<RefClassifier.Kind> HIDEABLE_REF_KINDS =
+      Sets.immutableEnumSet(
+          RefClassifier.Kind.ROBOT_COMMENTS,
+          RefClassifier.Kind.DRAFT_COMMENTS,
+          RefClassifier.Kind.STARRED_CHANGES,
+          RefClassifier.Kind.SEQUENCES);
+
+  /** Off-heap store of the change states backing the {@code change_state} cache. */
+  public enum ChangeStateStoreType {
+    NONE,
+    MMAP
+  }
 
-  private final List<String> hideRefs;
-  private final List<String> showRefs;
+  /** Type of the threads used for loading the change states of a filter call. */
+  public enum ExecutorType {
+    FIXED,
+    VIRTUAL
+  }
+
+  private final FilterProfile defaultProfile;
+  private final ImmutableList<FilterProfile> profiles;
+  private final ImmutableSet<RefClassifier.Kind> hiddenRefKinds;
+  private final boolean pruneBeforeAcl;
+  private final ExecutorType executorType;
+  private final int parallelism;
+  private final int executorQueueSize;
+  private final int sequentialThreshold;
+  private final Duration filterTimeBudget;
+  private final int cacheWarmerThreads;
+  private final int cacheWarmerQueueSize;
+  private final ChangeStateStoreType changeStateStoreType;
+  @Nullable private final String changeStateStoreDirectory;
+  @Nullable private final String snapshotFile;
+  private final boolean importSnapshotOnStart;
   private PluginConfigFactory cfgFactory;
 
   @Inject
@@ -43,46 +118,291 @@ public class FilterRefsConfig {
     this.cfgFactory = cfgFactory;
     List<String> hideRefsConfig =
         Arrays.asList(gerritConfig.getStringList(SECTION_GIT_REFS_FILTER, null, KEY_HIDE_REFS));
-
-    hideRefs =
-        ImmutableList.copyOf(
-            hideRefsConfig.stream()
-                .filter(s -> !s.startsWith("!"))
-                .map(String::trim)
-                .collect(Collectors.toList()));
-    showRefs =
-        ImmutableList.copyOf(
-            hideRefsConfig.stream()
-                .filter(s -> s.startsWith("!"))
-                .map(s -> s.substring(1))
-                .map(String::trim)
-                .collect(Collectors.toList()));
+    RefPatternMatcher hideRefsMatcher = compileHideRefs(hideRefsConfig);
+    defaultProfile =
+        FilterProfile.create(
+            FilterProfile.DEFAULT_PROFILE, null, Optional.empty(), hideRefsMatcher);
+    profiles = parseProfiles(gerritConfig, hideRefsMatcher);
+    hiddenRefKinds =
+        parseHiddenRefKinds(
+            gerritConfig.getStringList(SECTION_GIT_REFS_FILTER, null, KEY_HIDE_REF_KINDS));
+    pruneBeforeAcl = gerritConfig.getBoolean(SECTION_GIT_REFS_FILTER, KEY_PRUNE_BEFORE_ACL, false);
+    executorType =
+        gerritConfig.getEnum(SECTION_GIT_REFS_FILTER, null, KEY_EXECUTOR, ExecutorType.FIXED);
+    parallelism =
+        Math.max(
+            1,
+            gerritConfig.getInt(
+                SECTION_GIT_REFS_FILTER,
+                KEY_PARALLELISM,
+                Runtime.getRuntime().availableProcessors()));
+    executorQueueSize =
+        Math.max(
+            1,
+            gerritConfig.getInt(
+                SECTION_GIT_REFS_FILTER, KEY_EXECUTOR_QUEUE_SIZE, EXECUTOR_QUEUE_SIZE_DEFAULT));
+    sequentialThreshold =
+        gerritConfig.getInt(
+            SECTION_GIT_REFS_FILTER, KEY_SEQUENTIAL_THRESHOLD, SEQUENTIAL_THRESHOLD_DEFAULT);
+    filterTimeBudget =
+        Duration.ofMillis(
+            Math.max(
+                0,
+                ConfigUtil.getTimeUnit(
+                    gerritConfig,
+                    SECTION_GIT_REFS_FILTER,
+                    null,
+                    KEY_FILTER_TIME_BUDGET,
+                    0,
+                    TimeUnit.MILLISECONDS)));
+    cacheWarmerThreads =
+        Math.max(
+            0,
+            gerritConfig.getInt(
+                SECTION_GIT_REFS_FILTER, KEY_CACHE_WARMER_THREADS, CACHE_WARMER_THREADS_DEFAULT));
+    cacheWarmerQueueSize =
+        Math.max(
+            1,
+            gerritConfig.getInt(
+                SECTION_GIT_REFS_FILTER,
+                KEY_CACHE_WARMER_QUEUE_SIZE,
+                CACHE_WARMER_QUEUE_SIZE_DEFAULT));
+    changeStateStoreType =
+        gerritConfig.getEnum(
+            SECTION_GIT_REFS_FILTER, null, KEY_CHANGE_STATE_STORE, ChangeStateStoreType.NONE);
+    changeStateStoreDirectory =
+        gerritConfig.getString(SECTION_GIT_REFS_FILTER, null, KEY_CHANGE_STATE_STORE_DIRECTORY);
+    snapshotFile = gerritConfig.getString(SECTION_GIT_REFS_FILTER, null, KEY_SNAPSHOT_FILE);
+    importSnapshotOnStart =
+        gerritConfig.getBoolean(SECTION_GIT_REFS_FILTER, KEY_IMPORT_SNAPSHOT_ON_START, false);
   }
 
-  public boolean isRefToShow(Ref ref) {
-    String refName = ref.getName();
+  private static RefPatternMatcher compileHideRefs(List<String> hideRefsConfig) {
+    List<String> hideRefs =
+        hideRefsConfig.stream()
+            .filter(s -> !s.startsWith("!"))
+            .map(String::trim)
+            .collect(Collectors.toList());
+    List<String> showRefs =
+        hideRefsConfig.stream()
+            .filter(s -> s.startsWith("!"))
+            .map(s -> s.substring(1))
+            .map(String::trim)
+            .collect(Collectors.toList());
+    return RefPatternMatcher.compile(hideRefs, showRefs);
+  }
 
-    for (String refToShow : showRefs) {
-      if (refName.startsWith(refToShow)) {
-        return true;
+  /**
+   * Parses the {@code hideRefKinds} settings, e.g. {@code draft-comments}, among the {@link
+   * #HIDEABLE_REF_KINDS}. No kind is hidden by default, so that the refs advertised before
+   * upgrading are not hidden until the admins opt in; the value {@code none} hides no kind either.
+   */
+  private static ImmutableSet<RefClassifier.Kind> parseHiddenRefKinds(String[] hideRefKinds) {
+    Set<RefClassifier.Kind> kinds = EnumSet.noneOf(RefClassifier.Kind.class);
+    for (String value : hideRefKinds) {
+      String name = value.trim();
+      if (name.equalsIgnoreCase(HIDE_REF_KINDS_NONE)) {
+        continue;
       }
+      Optional<RefClassifier.Kind> kind =
+          Enums.getIfPresent(
+                  RefClassifier.Kind.class, name.replace('-', '_').toUpperCase(Locale.US))
+              .toJavaUtil()
+              .filter(HIDEABLE_REF_KINDS::contains);
+      if (!kind.isPresent()) {
+        logger.atWarning().log(
+            "Ignoring unknown git-refs-filter.%s '%s'", KEY_HIDE_REF_KINDS, name);
+        continue;
+      }
+      kinds.add(kind.get());
     }
+    return Sets.immutableEnumSet(kinds);
+  }
 
-    for (String refToHide : hideRefs) {
-      if (refName.startsWith(refToHide)) {
-        return false;
+  /**
+   * Parses the profiles defined in the {@code git-refs-filter} subsections. A profile without its
+   * own hideRefs rules uses the ones of the main section; a profile without a group is ignored.
+   */
+  private static ImmutableList<FilterProfile> parseProfiles(
+      Config gerritConfig, RefPatternMatcher defaultHideRefsMatcher) {
+    ImmutableList.Builder<FilterProfile> profiles = ImmutableList.builder();
+    for (String name : gerritConfig.getSubsections(SECTION_GIT_REFS_FILTER)) {
+      String group = gerritConfig.getString(SECTION_GIT_REFS_FILTER, name, KEY_PROFILE_GROUP);
+      if (Strings.isNullOrEmpty(group)) {
+        logger.atWarning().log(
+            "Ignoring git-refs-filter profile '%s' without a %s", name, KEY_PROFILE_GROUP);
+        continue;
       }
+      List<String> hideRefsConfig =
+          Arrays.asList(gerritConfig.getStringList(SECTION_GIT_REFS_FILTER, name, KEY_HIDE_REFS));
+      Optional<Duration> closedChangesGraceTime = Optional.empty();
+      if (gerritConfig.getString(
+              SECTION_GIT_REFS_FILTER, name, KEY_PROFILE_CLOSED_CHANGES_GRACE_TIME_SEC)
+          != null) {
+        closedChangesGraceTime =
+            Optional.of(
+                Duration.ofSeconds(
+                    gerritConfig.getLong(
+                        SECTION_GIT_REFS_FILTER,
+                        name,
+                        KEY_PROFILE_CLOSED_CHANGES_GRACE_TIME_SEC,
+                        CLOSED_CHANGES_GRACE_TIME_SEC_DEFAULT)));
+      }
+      profiles.add(
+          FilterProfile.create(
+              name,
+              group.trim(),
+              closedChangesGraceTime,
+              hideRefsConfig.isEmpty() ? defaultHideRefsMatcher : compileHideRefs(hideRefsConfig)));
     }
+    return profiles.build();
+  }
 
-    return true;
+  /**
+   * Whether the ref is not hidden by the hideRefs rules of the main section. The rule matching the
+   * longest part of the ref name wins, see {@link RefPatternMatcher}.
+   */
+  public boolean isRefToShow(Ref ref) {
+    return defaultProfile.isRefToShow(ref);
   }
 
-  /** performance warning: this call can be expensive, please reuse the value */
-  public long getClosedChangeGraceTimeSec(Project.NameKey projectKey)
-      throws NoSuchProjectException {
+  /**
+   * Whether the refs of this kind are hidden by {@code hideRefKinds}, only from their name and
+   * without looking up their change.
+   */
+  boolean isHiddenRefKind(RefClassifier.Kind kind) {
+    return hiddenRefKinds.contains(kind);
+  }
+
+  /** Profile applied to the users not matching the group of any other profile. */
+  public FilterProfile getDefaultProfile() {
+    return defaultProfile;
+  }
+
+  /** Profiles defined in the {@code git-refs-filter} subsections, in configuration order. */
+  public ImmutableList<FilterProfile> getProfiles() {
+    return profiles;
+  }
+
+  /**
+   * Whether the refs hidden by the filter are pruned before, rather than after, evaluating the user
+   * ACLs, so that the ACLs are evaluated only on the surviving refs.
+   */
+  public boolean isPruneBeforeAcl() {
+    return pruneBeforeAcl;
+  }
+
+  public ExecutorType getExecutorType() {
+    return executorType;
+  }
+
+  /** Maximum number of threads loading the change states of a single filter call. */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Maximum number of batches of change states waiting for a thread of the {@code fixed} executor.
+   */
+  public int getExecutorQueueSize() {
+    return executorQueueSize;
+  }
+
+  /**
+   * Number of change states missing from the cache below which they are loaded sequentially in the
+   * calling thread.
+   */
+  public int getSequentialThreshold() {
+    return sequentialThreshold;
+  }
+
+  /**
+   * Maximum time a filter call waits for the change states to load, after which the changes not
+   * resolved yet are advertised while their states keep loading in the background, or zero for
+   * waiting for all of them.
+   */
+  public Duration getFilterTimeBudget() {
+    return filterTimeBudget;
+  }
+
+  /**
+   * Number of threads loading the state of the updated changes in the background, or 0 for not
+   * warming the cache.
+   */
+  public int getCacheWarmerThreads() {
+    return cacheWarmerThreads;
+  }
+
+  /** Maximum number of updated changes waiting to be loaded, beyond which updates are dropped. */
+  public int getCacheWarmerQueueSize() {
+    return cacheWarmerQueueSize;
+  }
+
+  public ChangeStateStoreType getChangeStateStoreType() {
+    return changeStateStoreType;
+  }
+
+  /**
+   * Directory of the change state store files, relative to the site path, or null for the default
+   * {@code data/git-refs-filter} directory of the site.
+   */
+  @Nullable
+  public String getChangeStateStoreDirectory() {
+    return changeStateStoreDirectory;
+  }
+
+  /**
+   * File of the change states snapshot, relative to the site path, or null for the default {@code
+   * data/git-refs-filter/change_state.snapshot} file of the site.
+   */
+  @Nullable
+  public String getSnapshotFile() {
+    return snapshotFile;
+  }
+
+  /** Whether the change states snapshot is imported into the cache when the server starts. */
+  public boolean isImportSnapshotOnStart() {
+    return importSnapshotOnStart;
+  }
+
+  /**
+   * performance warning: this call can be expensive, please use the cached {@link
+   * ProjectSettings#closedChangesGraceTime()} instead
+   */
+  public long getClosedChangeGraceTimeSec(ProjectState projectState) {
     return cfgFactory
-        .getFromProjectConfigWithInheritance(projectKey, "gerrit")
+        .getFromProjectConfigWithInheritance(projectState, "gerrit")
         .getLong(
             PROJECT_CONFIG_CLOSED_CHANGES_GRACE_TIME_SEC, CLOSED_CHANGES_GRACE_TIME_SEC_DEFAULT);
   }
+
+  /**
+   * performance warning: this call can be expensive, please use the cached {@link
+   * ProjectSettings#staleOpenChangeTime()} instead
+   */
+  public long getStaleOpenChangeSec(ProjectState projectState) {
+    return cfgFactory
+        .getFromProjectConfigWithInheritance(projectState, "gerrit")
+        .getLong(PROJECT_CONFIG_STALE_OPEN_CHANGE_SEC, STALE_OPEN_CHANGE_SEC_DEFAULT);
+  }
+
+  /**
+   * performance warning: this call can be expensive, please use the cached {@link
+   * ProjectSettings#keepLastPatchSets()} instead
+   */
+  public int getKeepLastPatchSets(ProjectState projectState) {
+    return cfgFactory
+        .getFromProjectConfigWithInheritance(projectState, "gerrit")
+        .getInt(PROJECT_CONFIG_KEEP_LAST_PATCH_SETS, KEEP_LAST_PATCH_SETS_DEFAULT);
+  }
+
+  /**
+   * performance warning: this call can be expensive, please use the cached {@link
+   * ProjectSettings#maxAdvertisedChanges()} instead
+   */
+  public int getMaxAdvertisedChanges(ProjectState projectState) {
+    return cfgFactory
+        .getFromProjectConfigWithInheritance(projectState, "gerrit")
+        .getInt(PROJECT_CONFIG_MAX_ADVERTISED_CHANGES, MAX_ADVERTISED_CHANGES_DEFAULT);
+  }
 }
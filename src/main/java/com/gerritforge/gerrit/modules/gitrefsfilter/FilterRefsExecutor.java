@@ -0,0 +1,246 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executor dedicated to loading the change states of the filter calls, so that the blocking NoteDb
+ * reads do not run on the JVM-wide common ForkJoinPool.
+ *
+ * <p>The {@code fixed} executor queues up to {@code executorQueueSize} batches: when the queue is
+ * full, a batch is loaded in the calling thread, or left out of the result of a lookup with a
+ * timeout. The {@code virtual} executor starts a virtual thread per batch and never queues.
+ */
+@Singleton
+public class FilterRefsExecutor implements LifecycleListener {
+  private final int parallelism;
+  private final int sequentialThreshold;
+  private final ExecutorService executor;
+  // Batches loading the keys of the lookups with a timeout, only done on the change_state cache
+  private final ConcurrentMap<Object, Future<?>> inFlightLoads = new ConcurrentHashMap<>();
+
+  @Inject
+  FilterRefsExecutor(FilterRefsConfig config) {
+    this.parallelism = config.getParallelism();
+    this.sequentialThreshold = config.getSequentialThreshold();
+    this.executor =
+        switch (config.getExecutorType()) {
+          case FIXED ->
+              new ThreadPoolExecutor(
+                  parallelism,
+                  parallelism,
+                  0L,
+                  TimeUnit.MILLISECONDS,
+                  new ArrayBlockingQueue<>(config.getExecutorQueueSize()),
+                  new ThreadFactoryBuilder()
+                      .setNameFormat("git-refs-filter-%d")
+                      .setDaemon(true)
+                      .build());
+          case VIRTUAL ->
+              Executors.newThreadPerTaskExecutor(
+                  Thread.ofVirtual().name("git-refs-filter-", 0).factory());
+        };
+  }
+
+  /**
+   * Gets the values of the keys from the cache, loading the missing ones in up to {@code
+   * parallelism} concurrent batches.
+   *
+   * <p>When all the keys are cached, or fewer than {@code sequentialThreshold} are missing, the
+   * lookup runs sequentially in the calling thread. The keys the cache loader fails to load are
+   * left out of the result, without discarding the values loaded with them.
+   */
+  public <K, V> ImmutableMap<K, V> getAll(LoadingCache<K, V> cache, List<K> keys)
+      throws ExecutionException, InterruptedException {
+    ImmutableMap<K, V> cachedValues = cache.getAllPresent(keys);
+    if (cachedValues.size() == keys.size()) {
+      return cachedValues;
+    }
+
+    List<K> missingKeys = new ArrayList<>(keys.size() - cachedValues.size());
+    for (K key : keys) {
+      if (!cachedValues.containsKey(key)) {
+        missingKeys.add(key);
+      }
+    }
+    if (parallelism == 1 || missingKeys.size() < sequentialThreshold) {
+      return ImmutableMap.<K, V>builder()
+          .putAll(cachedValues)
+          .putAll(getAllLoaded(cache, missingKeys))
+          .buildKeepingLast();
+    }
+
+    int batchSize = (missingKeys.size() + parallelism - 1) / parallelism;
+    List<Future<ImmutableMap<K, V>>> batches = new ArrayList<>(parallelism);
+    ImmutableMap.Builder<K, V> values = ImmutableMap.<K, V>builder().putAll(cachedValues);
+    for (List<K> batch : Lists.partition(missingKeys, batchSize)) {
+      try {
+        batches.add(executor.submit(() -> getAllLoaded(cache, batch)));
+      } catch (RejectedExecutionException e) {
+        // The queue is full: load the batch in the calling thread
+        values.putAll(getAllLoaded(cache, batch));
+      }
+    }
+    for (Future<ImmutableMap<K, V>> batch : batches) {
+      values.putAll(batch.get());
+    }
+    return values.buildKeepingLast();
+  }
+
+  /**
+   * Gets the values of the keys from the cache like {@link #getAll(LoadingCache, List)}, waiting
+   * for the missing ones up to the given timeout.
+   *
+   * <p>The missing keys are always loaded on the executor, even below {@code sequentialThreshold},
+   * and the loads still running at the timeout are not cancelled: their values are left out of the
+   * result and fill the cache for the next lookups. The batches rejected by a full queue are left
+   * out of the result as well, without waiting for the timeout.
+   *
+   * <p>The keys still loading for a previous lookup are not submitted again: their batch is waited
+   * for up to the timeout instead, so that repeated lookups of slow keys do not pile up batches in
+   * the queue.
+   */
+  public <K, V> ImmutableMap<K, V> getAll(
+      LoadingCache<K, V> cache, List<K> keys, long timeout, TimeUnit unit)
+      throws ExecutionException, InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    ImmutableMap<K, V> cachedValues = cache.getAllPresent(keys);
+    if (cachedValues.size() == keys.size()) {
+      return cachedValues;
+    }
+
+    List<K> missingKeys = new ArrayList<>(keys.size() - cachedValues.size());
+    for (K key : keys) {
+      if (!cachedValues.containsKey(key)) {
+        missingKeys.add(key);
+      }
+    }
+    List<K> keysToLoad = new ArrayList<>(missingKeys.size());
+    List<K> inFlightKeys = new ArrayList<>();
+    Set<Future<?>> inFlightBatches = Sets.newIdentityHashSet();
+    for (K key : missingKeys) {
+      Future<?> inFlightBatch = inFlightLoads.get(key);
+      if (inFlightBatch != null) {
+        inFlightKeys.add(key);
+        inFlightBatches.add(inFlightBatch);
+      } else {
+        keysToLoad.add(key);
+      }
+    }
+
+    List<Future<ImmutableMap<K, V>>> futures = new ArrayList<>(parallelism);
+    if (!keysToLoad.isEmpty()) {
+      int batches = keysToLoad.size() < sequentialThreshold ? 1 : parallelism;
+      int batchSize = (keysToLoad.size() + batches - 1) / batches;
+      for (List<K> batch : Lists.partition(keysToLoad, batchSize)) {
+        try {
+          futures.add(submitTracked(cache, batch));
+        } catch (RejectedExecutionException e) {
+          // The queue is full: leave the batch to the next lookups
+        }
+      }
+    }
+    ImmutableMap.Builder<K, V> values = ImmutableMap.<K, V>builder().putAll(cachedValues);
+    for (Future<ImmutableMap<K, V>> batch : futures) {
+      try {
+        values.putAll(batch.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+      } catch (TimeoutException e) {
+        // Leave the batch loading in the background
+      }
+    }
+    if (!inFlightKeys.isEmpty()) {
+      for (Future<?> batch : inFlightBatches) {
+        try {
+          batch.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException | CancellationException e) {
+          // The values loaded by the batch, if any, are read from the cache
+        }
+      }
+      values.putAll(cache.getAllPresent(inFlightKeys));
+    }
+    return values.buildKeepingLast();
+  }
+
+  /**
+   * Submits the loading of a batch of keys, tracking its keys as in flight until it completes.
+   *
+   * @throws RejectedExecutionException if the queue is full, without tracking the keys.
+   */
+  private <K, V> Future<ImmutableMap<K, V>> submitTracked(LoadingCache<K, V> cache, List<K> batch) {
+    FutureTask<ImmutableMap<K, V>> task =
+        new FutureTask<>(() -> getAllLoaded(cache, batch)) {
+          @Override
+          protected void done() {
+            for (K key : batch) {
+              inFlightLoads.remove(key, this);
+            }
+          }
+        };
+    for (K key : batch) {
+      inFlightLoads.putIfAbsent(key, task);
+    }
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.cancel(false);
+      throw e;
+    }
+    return task;
+  }
+
+  /**
+   * Gets the values of the keys from the cache, leaving out the keys for which the bulk loader did
+   * not return a value: the cache then throws {@link InvalidCacheLoadException} after storing the
+   * values of the other keys, which are read back.
+   */
+  private static <K, V> ImmutableMap<K, V> getAllLoaded(LoadingCache<K, V> cache, List<K> keys)
+      throws ExecutionException {
+    try {
+      return cache.getAll(keys);
+    } catch (InvalidCacheLoadException e) {
+      return cache.getAllPresent(keys);
+    }
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executor.shutdownNow();
+  }
+}
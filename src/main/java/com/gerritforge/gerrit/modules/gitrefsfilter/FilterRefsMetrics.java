@@ -0,0 +1,146 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.Histogram1;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.metrics.Timer1;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/** Metrics of the refs filter, registered under {@code git_refs_filter/}. */
+@Singleton
+public class FilterRefsMetrics {
+  private static final String PREFIX = "git_refs_filter/";
+
+  /** Stage of {@link ForProjectWrapper#filter}. */
+  public enum Stage {
+    /** The whole filter call, including the lookup of the memoized refs. */
+    TOTAL,
+    /** Filter of the refs by the ACLs of the user. */
+    ACL,
+    /** Removal of the refs hidden by this module, including the following stages. */
+    PRUNE,
+    /** Match of the refs against the hideRefs rules. */
+    HIDE_REFS,
+    /** Lookup of the state of the changes. */
+    CHANGE_STATES
+  }
+
+  /** Reason why a ref is hidden by this module. */
+  public enum HideReason {
+    USERS,
+    AUTOMERGE,
+    AUXILIARY,
+    HIDE_REFS,
+    META,
+    CLOSED,
+    STALE,
+    CORRUPT,
+    OLD_PATCH_SETS,
+    MAX_ADVERTISED_CHANGES
+  }
+
+  final Timer1<Stage> filterLatency;
+  final Histogram1<String> refsIn;
+  final Histogram1<String> refsOut;
+  final Counter1<HideReason> hiddenRefs;
+  final Timer0 changeStateLoadLatency;
+  final Counter0 changeStateLoadFailures;
+  final Counter0 changeStateWarmerDropped;
+  final Counter0 corruptChanges;
+  final Counter0 timeBudgetExceeded;
+  final Counter0 timeBudgetUnresolvedRefs;
+
+  @Inject
+  FilterRefsMetrics(MetricMaker metricMaker) {
+    filterLatency =
+        metricMaker.newTimer(
+            PREFIX + "filter_latency",
+            new Description("Latency of the stages of the refs filter")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS),
+            Field.ofEnum(Stage.class, "stage", Field.ignoreMetadata())
+                .description("Stage of the filter")
+                .build());
+    refsIn =
+        metricMaker.newHistogram(
+            PREFIX + "refs_in",
+            new Description("Refs passed to the filter").setCumulative().setUnit("refs"),
+            projectField());
+    refsOut =
+        metricMaker.newHistogram(
+            PREFIX + "refs_out",
+            new Description("Refs returned by the filter").setCumulative().setUnit("refs"),
+            projectField());
+    hiddenRefs =
+        metricMaker.newCounter(
+            PREFIX + "hidden_refs",
+            new Description("Refs hidden by the filter").setRate().setUnit("refs"),
+            Field.ofEnum(HideReason.class, "reason", Field.ignoreMetadata())
+                .description("Reason why the refs are hidden")
+                .build());
+    changeStateLoadLatency =
+        metricMaker.newTimer(
+            PREFIX + "change_state/load_latency",
+            new Description("Latency of loading the state of a change from its meta-ref")
+                .setCumulative()
+                .setUnit(Units.MILLISECONDS));
+    changeStateLoadFailures =
+        metricMaker.newCounter(
+            PREFIX + "change_state/load_failures",
+            new Description("Failures to load the state of a change").setRate().setUnit("errors"));
+    changeStateWarmerDropped =
+        metricMaker.newCounter(
+            PREFIX + "change_state/warmer_dropped",
+            new Description("Updated changes not warmed because the warmer queue was full")
+                .setRate()
+                .setUnit("changes"));
+    corruptChanges =
+        metricMaker.newCounter(
+            PREFIX + "change_state/corrupt_changes",
+            new Description("Changes detected as corrupt because their state cannot be loaded")
+                .setRate()
+                .setUnit("changes"));
+    timeBudgetExceeded =
+        metricMaker.newCounter(
+            PREFIX + "time_budget/exceeded",
+            new Description(
+                    "Filter calls that ran out of time budget for loading the change states")
+                .setRate()
+                .setUnit("calls"));
+    timeBudgetUnresolvedRefs =
+        metricMaker.newCounter(
+            PREFIX + "time_budget/unresolved_refs",
+            new Description(
+                    "Refs advertised without resolving the state of their change because the time"
+                        + " budget ran out")
+                .setRate()
+                .setUnit("refs"));
+  }
+
+  private static Field<String> projectField() {
+    return Field.ofProjectName("project").description("Name of the project").build();
+  }
+
+  void recordHiddenRefs(HideReason reason, int count) {
+    if (count > 0) {
+      hiddenRefs.incrementBy(reason, count);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.permissions.PermissionBackend.RefFilterOptions;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.inject.Module;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * Memoizes the refs advertised to a user for a project, so that repeated fetches of an unchanged
+ * repository do not filter all its refs again.
+ */
+public class FilteredRefsCache {
+  public static final String FILTERED_REFS_CACHE = "filtered_refs";
+
+  /** Default maximum number of refs, across all the entries, kept in the cache. */
+  static final long MAX_REFS_DEFAULT = 1_000_000L;
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(FILTERED_REFS_CACHE, Key.class, FilteredRefs.class)
+            .maximumWeight(MAX_REFS_DEFAULT)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .weigher(RefsWeigher.class);
+      }
+    };
+  }
+
+  /**
+   * Identifies a filter call by its inputs: the project, the user, the filter options, the
+   * filtering profile, the grace time for closed changes and a fingerprint of the refs, of the user
+   * groups and of the project ACLs.
+   */
+  @AutoValue
+  public abstract static class Key {
+    public abstract Project.NameKey project();
+
+    /** Account of the user, or null for the anonymous user. */
+    @Nullable
+    public abstract Account.Id accountId();
+
+    public abstract RefFilterOptions opts();
+
+    /** Name of the {@link FilterProfile} of the user, empty for the default profile. */
+    public abstract String profile();
+
+    public abstract Duration closedChangesGraceTime();
+
+    public abstract HashCode fingerprint();
+
+    static Key create(
+        Project.NameKey project,
+        @Nullable Account.Id accountId,
+        RefFilterOptions opts,
+        String profile,
+        Duration closedChangesGraceTime,
+        HashCode fingerprint) {
+      return new AutoValue_FilteredRefsCache_Key(
+          project, accountId, opts, profile, closedChangesGraceTime, fingerprint);
+    }
+  }
+
+  /**
+   * Refs resulting from a filter call, valid until the earliest instant when one of the advertised
+   * closed changes becomes hidden.
+   */
+  @AutoValue
+  public abstract static class FilteredRefs {
+    public abstract ImmutableList<Ref> refs();
+
+    public abstract Instant validUntil();
+
+    static FilteredRefs create(ImmutableList<Ref> refs, Instant validUntil) {
+      return new AutoValue_FilteredRefsCache_FilteredRefs(refs, validUntil);
+    }
+  }
+
+  /**
+   * Computes a fingerprint of the names and object ids of the refs, of the groups of the user and
+   * of the project config revisions of the project and its parents, which hold the ACLs used by the
+   * filter.
+   */
+  static HashCode fingerprint(
+      Collection<Ref> refs,
+      Collection<AccountGroup.UUID> groups,
+      Optional<ProjectState> projectState) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    groups.stream()
+        .map(AccountGroup.UUID::get)
+        .sorted()
+        .forEach(uuid -> hasher.putUnencodedChars(uuid).putByte((byte) 0));
+    byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+    for (Ref ref : refs) {
+      hasher.putUnencodedChars(ref.getName());
+      putObjectId(hasher, ref.getObjectId(), rawId);
+    }
+    if (projectState.isPresent()) {
+      for (ProjectState state : projectState.get().tree()) {
+        putObjectId(hasher, state.getConfig().getRevision().orElse(null), rawId);
+      }
+    }
+    return hasher.hash();
+  }
+
+  private static void putObjectId(Hasher hasher, @Nullable ObjectId objectId, byte[] rawId) {
+    if (objectId == null) {
+      hasher.putByte((byte) 0);
+      return;
+    }
+    objectId.copyRawTo(rawId, 0);
+    hasher.putByte((byte) 1).putBytes(rawId);
+  }
+
+  static class RefsWeigher implements Weigher<Key, FilteredRefs> {
+    @Override
+    public int weigh(Key key, FilteredRefs filteredRefs) {
+      return 1 + filteredRefs.refs().size();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateStore.CHANGE_STATE_STORE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.CorruptChanges.CORRUPT_CHANGES_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FILTERED_REFS_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.HiddenChangesIndex.HIDDEN_CHANGES_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ProjectSettingsCache.PROJECT_SETTINGS_CACHE;
+
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FilteredRefs;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * REST endpoint discarding the entries of a single project from the caches of the refs filter,
+ * rather than flushing the whole caches:
+ *
+ * <pre>
+ * POST /config/server/git-refs-filter-flush
+ * </pre>
+ *
+ * <p>The file of the project in the {@link ChangeStateStore}, if enabled, is deleted as well, so
+ * that the states of its changes are loaded from NoteDb again.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.MAINTAIN_SERVER)
+public class FlushProjectCaches
+    implements RestModifyView<ConfigResource, FlushProjectCaches.Input> {
+  public static final String VIEW_NAME = "git-refs-filter-flush";
+
+  public static class Input {
+    public String project;
+  }
+
+  private final ChangeStateStore changeStateStore;
+  private final LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+  private final LoadingCache<Project.NameKey, HiddenChangesIndex> hiddenChangesCache;
+  private final Cache<ChangeCacheKey, CorruptChanges.Detection> corruptChangesCache;
+  private final Cache<FilteredRefsCache.Key, FilteredRefs> filteredRefsCache;
+  private final LoadingCache<Project.NameKey, ProjectSettings> projectSettingsCache;
+
+  @Inject
+  FlushProjectCaches(
+      ChangeStateStore changeStateStore,
+      @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache,
+      @Named(HIDDEN_CHANGES_CACHE)
+          LoadingCache<Project.NameKey, HiddenChangesIndex> hiddenChangesCache,
+      @Named(CORRUPT_CHANGES_CACHE)
+          Cache<ChangeCacheKey, CorruptChanges.Detection> corruptChangesCache,
+      @Named(FILTERED_REFS_CACHE) Cache<FilteredRefsCache.Key, FilteredRefs> filteredRefsCache,
+      @Named(PROJECT_SETTINGS_CACHE)
+          LoadingCache<Project.NameKey, ProjectSettings> projectSettingsCache) {
+    this.changeStateStore = changeStateStore;
+    this.changeStateCache = changeStateCache;
+    this.hiddenChangesCache = hiddenChangesCache;
+    this.corruptChangesCache = corruptChangesCache;
+    this.filteredRefsCache = filteredRefsCache;
+    this.projectSettingsCache = projectSettingsCache;
+  }
+
+  /**
+   * Returns the number of entries discarded from each cache, and the number of files deleted from
+   * the {@code change_state_store} when enabled.
+   */
+  @Override
+  public Response<Map<String, Integer>> apply(ConfigResource resource, Input input)
+      throws BadRequestException {
+    if (input == null || Strings.isNullOrEmpty(input.project)) {
+      throw new BadRequestException("project is required");
+    }
+    Project.NameKey project = Project.nameKey(input.project);
+    Map<String, Integer> flushed = new LinkedHashMap<>();
+    if (changeStateStore.isEnabled()) {
+      // Before the cache, whose misses would read the states from the file again
+      flushed.put(CHANGE_STATE_STORE, changeStateStore.delete(project) ? 1 : 0);
+    }
+    flushed.put(CHANGE_STATE_CACHE, flush(changeStateCache, ChangeCacheKey::project, project));
+    flushed.put(HIDDEN_CHANGES_CACHE, flush(hiddenChangesCache, Function.identity(), project));
+    flushed.put(
+        CORRUPT_CHANGES_CACHE, flush(corruptChangesCache, ChangeCacheKey::project, project));
+    flushed.put(
+        FILTERED_REFS_CACHE, flush(filteredRefsCache, FilteredRefsCache.Key::project, project));
+    flushed.put(PROJECT_SETTINGS_CACHE, flush(projectSettingsCache, Function.identity(), project));
+    return Response.ok(flushed);
+  }
+
+  private static <K> int flush(
+      Cache<K, ?> cache, Function<K, Project.NameKey> keyProject, Project.NameKey project) {
+    ImmutableList<K> keys =
+        cache.asMap().keySet().stream()
+            .filter(key -> keyProject.apply(key).equals(project))
+            .collect(ImmutableList.toImmutableList());
+    cache.invalidateAll(keys);
+    return keys.size();
+  }
+}
@@ -11,36 +11,58 @@
 
 package com.gerritforge.gerrit.modules.gitrefsfilter;
 
-import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangesTsCache.CHANGES_CACHE_TS;
-import static com.gerritforge.gerrit.modules.gitrefsfilter.OpenChangesCache.OPEN_CHANGES_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FILTERED_REFS_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.HiddenChangesIndex.HIDDEN_CHANGES_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ProjectSettingsCache.PROJECT_SETTINGS_CACHE;
 
+import com.gerritforge.gerrit.modules.gitrefsfilter.ChangeRefsTable.Resolution;
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilterRefsMetrics.HideReason;
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilterRefsMetrics.Stage;
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FilteredRefs;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Ordering;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Change;
-import com.google.gerrit.entities.Change.Id;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.extensions.api.access.CoreOrPluginProjectPermission;
 import com.google.gerrit.extensions.conditions.BooleanCondition;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.metrics.Timer1;
+import com.google.gerrit.server.AnonymousUser;
+import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.permissions.PermissionBackend.ForProject;
 import com.google.gerrit.server.permissions.PermissionBackend.ForRef;
 import com.google.gerrit.server.permissions.PermissionBackend.RefFilterOptions;
 import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.project.NoSuchProjectException;
+import com.google.gerrit.server.project.ProjectCache;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.name.Named;
 import java.io.IOException;
-import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefDatabase;
@@ -49,31 +71,86 @@ import org.eclipse.jgit.lib.Repository;
 public class ForProjectWrapper extends ForProject {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
-  private final LoadingCache<ChangeCacheKey, Boolean> openChangesCache;
-  private final LoadingCache<ChangeCacheKey, Long> changesTsCache;
+  /** Maximum number of refs pruned together, bounding the buffers of a filter call. */
+  static final int CHUNK_SIZE = 1 << 14;
+
+  private final LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
   private final ForProject defaultForProject;
   private final Project.NameKey project;
   private final FilterRefsConfig config;
-  private long closedChangesGraceTime;
+  private final FilterRefsExecutor executor;
+  private final ProjectCache projectCache;
+  private final Cache<FilteredRefsCache.Key, FilteredRefs> filteredRefsCache;
+  private final CurrentUser user;
+  private final FilterProfile profile;
+  private final LoadingCache<Project.NameKey, HiddenChangesIndex> hiddenChangesCache;
+  private final HiddenChangesIndex hiddenChanges;
+  private final CorruptChanges corruptChanges;
+  private final FilterRefsMetrics metrics;
+  private final Duration closedChangesGraceTime;
+  private final Duration staleOpenChangeTime;
+  private final int keepLastPatchSets;
+  private final int maxAdvertisedChanges;
+  private final Duration timeBudget;
 
   public interface Factory {
-    ForProjectWrapper get(ForProject defaultForProject, Project.NameKey project);
+    ForProjectWrapper get(
+        ForProject defaultForProject,
+        Project.NameKey project,
+        CurrentUser user,
+        FilterProfile profile);
   }
 
   @Inject
   public ForProjectWrapper(
       FilterRefsConfig config,
-      @Named(OPEN_CHANGES_CACHE) LoadingCache<ChangeCacheKey, Boolean> openChangesCache,
-      @Named(CHANGES_CACHE_TS) LoadingCache<ChangeCacheKey, Long> changesTsCache,
+      FilterRefsExecutor executor,
+      FilterRefsMetrics metrics,
+      ProjectCache projectCache,
+      @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache,
+      @Named(FILTERED_REFS_CACHE) Cache<FilteredRefsCache.Key, FilteredRefs> filteredRefsCache,
+      @Named(PROJECT_SETTINGS_CACHE)
+          LoadingCache<Project.NameKey, ProjectSettings> projectSettingsCache,
+      @Named(HIDDEN_CHANGES_CACHE) LoadingCache<Project.NameKey, HiddenChangesIndex> hiddenChanges,
+      CorruptChanges corruptChanges,
       @Assisted ForProject defaultForProject,
-      @Assisted Project.NameKey project)
+      @Assisted Project.NameKey project,
+      @Assisted CurrentUser user,
+      @Assisted FilterProfile profile)
       throws NoSuchProjectException {
-    this.openChangesCache = openChangesCache;
-    this.changesTsCache = changesTsCache;
+    this.changeStateCache = changeStateCache;
     this.defaultForProject = defaultForProject;
     this.project = project;
     this.config = config;
-    this.closedChangesGraceTime = config.getClosedChangeGraceTimeSec(project);
+    this.executor = executor;
+    this.metrics = metrics;
+    this.projectCache = projectCache;
+    this.filteredRefsCache = filteredRefsCache;
+    this.user = user;
+    this.profile = profile;
+    this.hiddenChangesCache = hiddenChanges;
+    this.hiddenChanges = hiddenChanges.getUnchecked(project);
+    this.corruptChanges = corruptChanges;
+    ProjectSettings settings = getSettings(projectSettingsCache, project);
+    this.closedChangesGraceTime =
+        profile.closedChangesGraceTime().orElse(settings.closedChangesGraceTime());
+    this.staleOpenChangeTime = settings.staleOpenChangeTime();
+    this.keepLastPatchSets = settings.keepLastPatchSets();
+    this.maxAdvertisedChanges = settings.maxAdvertisedChanges();
+    this.timeBudget = config.getFilterTimeBudget();
+  }
+
+  private static ProjectSettings getSettings(
+      LoadingCache<Project.NameKey, ProjectSettings> projectSettingsCache, Project.NameKey project)
+      throws NoSuchProjectException {
+    try {
+      return projectSettingsCache.get(project);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), NoSuchProjectException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(
+          String.format("Unable to load the settings of project '%s'", project), e.getCause());
+    }
   }
 
   @Override
@@ -96,78 +173,473 @@ public class ForProjectWrapper extends ForProject {
   @Override
   public Collection<Ref> filter(Collection<Ref> refs, Repository repo, RefFilterOptions opts)
       throws PermissionBackendException {
-    Map<Optional<Id>, ObjectId> changeRevisions =
-        refs.stream()
-            .filter(ref -> ref.getName().endsWith("/meta"))
-            .collect(Collectors.toMap(ForProjectWrapper::changeIdFromRef, Ref::getObjectId));
-    RefDatabase refDb = repo.getRefDatabase();
-    return defaultForProject.filter(refs, repo, opts).parallelStream()
-        .filter(ref -> !ref.getName().startsWith(RefNames.REFS_USERS))
-        .filter(ref -> !ref.getName().startsWith(RefNames.REFS_CACHE_AUTOMERGE))
-        .filter(config::isRefToShow)
-        .filter(
-            (ref) -> {
-              Optional<Id> changeId = changeIdFromRef(ref);
-              Optional<ObjectId> changeRevision =
-                  changeId.flatMap(cid -> Optional.ofNullable(changeRevisions.get(changeId)));
-              if (!changeRevision.isPresent()) {
-                changeRevision = changeRevisionFromRefDb(refDb, changeId);
-              }
-              String refName = ref.getName();
-              return (!changeId.isPresent()
-                  || !changeRevision.isPresent()
-                  || (!RefNames.isNoteDbMetaRef(refName)
-                      && (isOpen(repo, changeId.get(), changeRevision.get())
-                          || isRecent(repo, changeId.get(), changeRevision.get()))));
-            })
-        .collect(Collectors.toList());
-  }
-
-  private static Optional<ObjectId> changeRevisionFromRefDb(
-      RefDatabase refDb, Optional<Change.Id> changeId) {
-    return changeId.flatMap(cid -> exactRefUnchecked(refDb, cid)).map(Ref::getObjectId);
-  }
-
-  private static Optional<Ref> exactRefUnchecked(RefDatabase refDb, Change.Id changeId) {
+    try (Timer1.Context<Stage> ctx = metrics.filterLatency.start(Stage.TOTAL)) {
+      metrics.refsIn.record(project.get(), refs.size());
+      Collection<Ref> filteredRefs = filterMemoized(refs, repo, opts);
+      metrics.refsOut.record(project.get(), filteredRefs.size());
+      return filteredRefs;
+    }
+  }
+
+  private Collection<Ref> filterMemoized(
+      Collection<Ref> refs, Repository repo, RefFilterOptions opts)
+      throws PermissionBackendException {
+    Optional<FilteredRefsCache.Key> key = filteredRefsKey(refs, opts);
+    if (!key.isPresent()) {
+      return filterRefs(refs, repo, opts).refs();
+    }
+
+    FilteredRefs cachedRefs = filteredRefsCache.getIfPresent(key.get());
+    if (cachedRefs != null) {
+      if (!Instant.now().truncatedTo(ChronoUnit.SECONDS).isAfter(cachedRefs.validUntil())) {
+        return cachedRefs.refs();
+      }
+      filteredRefsCache.invalidate(key.get());
+    }
+
     try {
-      return Optional.ofNullable(refDb.exactRef(RefNames.changeMetaRef(changeId)));
-    } catch (IOException e) {
-      logger.atWarning().withCause(e).log(
-          "Error looking up change '%d' meta-ref from refs db.", changeId.get());
+      return filteredRefsCache.get(key.get(), () -> filterRefs(refs, repo, opts)).refs();
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), PermissionBackendException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new PermissionBackendException(
+          String.format("Unable to filter the refs of project '%s'", project), e.getCause());
+    }
+  }
+
+  private FilteredRefs filterRefs(Collection<Ref> refs, Repository repo, RefFilterOptions opts)
+      throws PermissionBackendException {
+    ChangeRefsTable changes = new ChangeRefsTable();
+    RefDatabase refDb = repo.getRefDatabase();
+    long startNanos = System.nanoTime();
+    if (config.isPruneBeforeAcl()) {
+      FilteredRefs prunedRefs = pruneRefs(refs, changes, refDb, startNanos);
+      return FilteredRefs.create(
+          ImmutableList.copyOf(aclFilter(prunedRefs.refs(), repo, opts)), prunedRefs.validUntil());
+    }
+    // The meta-refs are usually not visible to the user: record their revisions before the ACLs
+    addMetaRevisions(refs, changes);
+    return pruneRefs(aclFilter(refs, repo, opts), changes, refDb, startNanos);
+  }
+
+  private Collection<Ref> aclFilter(Collection<Ref> refs, Repository repo, RefFilterOptions opts)
+      throws PermissionBackendException {
+    try (Timer1.Context<Stage> ctx = metrics.filterLatency.start(Stage.ACL)) {
+      return defaultForProject.filter(refs, repo, opts);
+    }
+  }
+
+  /**
+   * Identifies the filter call in the {@link FilteredRefsCache}. Only identified and anonymous
+   * users are memoized, because the ACLs of any other user are not fully determined by its account.
+   */
+  private Optional<FilteredRefsCache.Key> filteredRefsKey(
+      Collection<Ref> refs, RefFilterOptions opts) {
+    Account.Id accountId;
+    if (user.isIdentifiedUser()) {
+      accountId = user.getAccountId();
+    } else if (user instanceof AnonymousUser) {
+      accountId = null;
+    } else {
       return Optional.empty();
     }
+    return Optional.of(
+        FilteredRefsCache.Key.create(
+            project,
+            accountId,
+            opts,
+            profile.name(),
+            closedChangesGraceTime,
+            FilteredRefsCache.fingerprint(
+                refs, user.getEffectiveGroups().getKnownGroups(), projectCache.get(project))));
+  }
+
+  /**
+   * Removes the refs hidden by this filter, which do not depend on the user ACLs: users refs,
+   * automerge refs, hideRefKinds, hideRefs, change meta-refs, the refs of changes closed before the
+   * grace time, the refs of open changes inactive for longer than the stale time, the patch sets of
+   * open changes older than the last {@code keepLastPatchSets} and the changes beyond the {@code
+   * maxAdvertisedChanges} most recent ones.
+   *
+   * <p>After a first pass recording the changes of the refs in the {@link ChangeRefsTable}, the
+   * refs are pruned in chunks of {@link #CHUNK_SIZE}: the state of the changes first seen in a
+   * chunk is looked up with a single bulk call, so that the intermediate buffers are bounded by the
+   * chunk size rather than by the number of refs.
+   *
+   * <p>When the {@code filterTimeBudget} counted from {@code startNanos} runs out, the changes
+   * whose state is not loaded yet are advertised and their states keep loading in the background.
+   */
+  private FilteredRefs pruneRefs(
+      Collection<Ref> refs, ChangeRefsTable changes, RefDatabase refDb, long startNanos) {
+    try (Timer1.Context<Stage> ctx = metrics.filterLatency.start(Stage.PRUNE)) {
+      BitSet shownRefs = hideRefs(refs, changes);
+
+      Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+      int chunkCapacity = Math.min(CHUNK_SIZE, refs.size());
+      Ref[] chunk = new Ref[chunkCapacity];
+      long[] classifiedChunk = new long[chunkCapacity];
+      int[] loadingChangeNums = new int[chunkCapacity];
+      List<ChangeCacheKey> loadingKeys = new ArrayList<>(chunkCapacity);
+      long changeStatesNanos = 0;
+
+      Instant validUntil = Instant.MAX;
+      int metaRefs = 0;
+      int closedRefs = 0;
+      int staleRefs = 0;
+      int corruptRefs = 0;
+      int oldPatchSetRefs = 0;
+      int unresolvedRefs = 0;
+      Map<ChangeCacheKey, ChangeState> hiddenChangeStates = new HashMap<>();
+      ImmutableList.Builder<Ref> visibleRefs = ImmutableList.builder();
+      Iterator<Ref> refsIterator = refs.iterator();
+      int refIndex = 0;
+      while (refsIterator.hasNext()) {
+        int chunkSize = 0;
+        while (chunkSize < chunkCapacity && refsIterator.hasNext()) {
+          Ref ref = refsIterator.next();
+          if (shownRefs.get(refIndex++)) {
+            chunk[chunkSize] = ref;
+            classifiedChunk[chunkSize] = RefClassifier.classify(ref.getName());
+            chunkSize++;
+          }
+        }
+
+        long loadStart = System.nanoTime();
+        int loadingChanges = 0;
+        loadingKeys.clear();
+        for (int i = 0; i < chunkSize; i++) {
+          long classifiedRef = classifiedChunk[i];
+          if (!RefClassifier.kind(classifiedRef).isChangeRef()) {
+            continue;
+          }
+          int slot = changes.add(RefClassifier.changeNum(classifiedRef));
+          if (changes.resolution(slot) == Resolution.UNRESOLVED) {
+            if (changes.metaRevision(slot) == null) {
+              // The revision of a meta-ref not listed in the refs is not part of the fingerprint of
+              // the filter call: do not reuse this result
+              validUntil = Instant.MIN;
+            }
+            ChangeCacheKey key = resolveChange(changes, slot, refDb, now);
+            if (key != null) {
+              loadingChangeNums[loadingChanges++] = changes.changeNum(slot);
+              loadingKeys.add(key);
+            }
+          }
+        }
+        if (loadingChanges > 0) {
+          Map<ChangeCacheKey, ChangeState> changeStates = getChangeStates(loadingKeys, startNanos);
+          for (int i = 0; i < loadingChanges; i++) {
+            // The changes added after this one in the chunk may have resized the table
+            int slot = changes.add(loadingChangeNums[i]);
+            ChangeCacheKey key = changes.key(slot);
+            if (!timeBudget.isZero()
+                && !changeStates.containsKey(key)
+                && corruptChanges.detectedOn(key) == null) {
+              // Leave the change loading in the background, rather than looking it up again
+              // beyond the time budget
+              continue;
+            }
+            ChangeState changeState = changeState(key, changeStates);
+            Instant corruptSince = changeState == null ? corruptChanges.detectedOn(key) : null;
+            if (corruptSince != null) {
+              changes.setCorrupt(slot, corruptSince);
+            } else {
+              changes.setLoaded(slot, changeState);
+            }
+          }
+        }
+        changeStatesNanos += System.nanoTime() - loadStart;
+
+        for (int i = 0; i < chunkSize; i++) {
+          Ref ref = chunk[i];
+          long classifiedRef = classifiedChunk[i];
+          RefClassifier.Kind kind = RefClassifier.kind(classifiedRef);
+          if (!kind.isChangeRef()) {
+            visibleRefs.add(ref);
+            continue;
+          }
+          int slot = changes.add(RefClassifier.changeNum(classifiedRef));
+          Resolution resolution = changes.resolution(slot);
+          if (resolution == Resolution.INDEXED_AS_HIDDEN) {
+            if (kind == RefClassifier.Kind.PATCH_SET) {
+              closedRefs++;
+            } else {
+              metaRefs++;
+            }
+            continue;
+          }
+          if (resolution == Resolution.UNTRACKED) {
+            visibleRefs.add(ref);
+            changes.setAdvertised(slot);
+            continue;
+          }
+          if (kind != RefClassifier.Kind.PATCH_SET) {
+            metaRefs++;
+            continue;
+          }
+          ChangeState changeState = changes.state(slot);
+          if (changeState == null) {
+            // The change state is unknown or still loading: advertise the ref and do not reuse
+            // this result
+            if (resolution == Resolution.LOADING) {
+              unresolvedRefs++;
+            }
+            visibleRefs.add(ref);
+            changes.setAdvertised(slot);
+            validUntil = Instant.MIN;
+            continue;
+          }
+          Instant hideAfter = changeState.hideAfter(closedChangesGraceTime, staleOpenChangeTime);
+          if (now.isAfter(hideAfter)) {
+            if (resolution == Resolution.CORRUPT) {
+              corruptRefs++;
+            } else if (changeState.isOpen()) {
+              staleRefs++;
+            } else {
+              closedRefs++;
+              hiddenChangeStates.put(changes.key(slot), changeState);
+            }
+          } else if (changeState.isOpen()
+              && isOldPatchSet(RefClassifier.patchSet(classifiedRef), changes.lastPatchSet(slot))) {
+            oldPatchSetRefs++;
+          } else {
+            visibleRefs.add(ref);
+            changes.setAdvertised(slot);
+            validUntil = Ordering.natural().min(validUntil, hideAfter);
+          }
+        }
+      }
+      metrics.filterLatency.record(Stage.CHANGE_STATES, changeStatesNanos, TimeUnit.NANOSECONDS);
+      if (hiddenChanges.putAll(hiddenChangeStates)) {
+        // Weigh the grown index again, unless it was evicted or flushed meanwhile
+        hiddenChangesCache.asMap().replace(project, hiddenChanges, hiddenChanges);
+      }
+      metrics.recordHiddenRefs(HideReason.META, metaRefs);
+      metrics.recordHiddenRefs(HideReason.CLOSED, closedRefs);
+      metrics.recordHiddenRefs(HideReason.STALE, staleRefs);
+      metrics.recordHiddenRefs(HideReason.CORRUPT, corruptRefs);
+      metrics.recordHiddenRefs(HideReason.OLD_PATCH_SETS, oldPatchSetRefs);
+      if (unresolvedRefs > 0) {
+        metrics.timeBudgetExceeded.increment();
+        metrics.timeBudgetUnresolvedRefs.incrementBy(unresolvedRefs);
+        logger.atFine().log(
+            "Time budget of %s exceeded filtering the refs of project '%s': %d refs advertised"
+                + " without resolving their change",
+            timeBudget, project, unresolvedRefs);
+      }
+      return FilteredRefs.create(limitAdvertisedChanges(visibleRefs.build(), changes), validUntil);
+    }
+  }
+
+  /**
+   * Removes the refs of the advertised changes beyond the {@code maxAdvertisedChanges} with the
+   * highest change numbers.
+   *
+   * <p>With {@code pruneBeforeAcl}, the changes are counted before the ACLs, so that fewer than
+   * {@code maxAdvertisedChanges} changes may be left once the ACLs hide some of them.
+   */
+  private ImmutableList<Ref> limitAdvertisedChanges(
+      ImmutableList<Ref> refs, ChangeRefsTable changes) {
+    if (maxAdvertisedChanges <= 0 || changes.advertisedChanges() <= maxAdvertisedChanges) {
+      return refs;
+    }
+    int lowestChangeNum = changes.lowestOfLatestAdvertised(maxAdvertisedChanges);
+    int droppedRefs = 0;
+    ImmutableList.Builder<Ref> limitedRefs = ImmutableList.builder();
+    for (Ref ref : refs) {
+      long classifiedRef = RefClassifier.classify(ref.getName());
+      if (RefClassifier.kind(classifiedRef).isChangeRef()
+          && RefClassifier.changeNum(classifiedRef) < lowestChangeNum) {
+        droppedRefs++;
+      } else {
+        limitedRefs.add(ref);
+      }
+    }
+    metrics.recordHiddenRefs(HideReason.MAX_ADVERTISED_CHANGES, droppedRefs);
+    return limitedRefs.build();
   }
 
-  private static Optional<Change.Id> changeIdFromRef(Ref ref) {
-    return Optional.ofNullable(Change.Id.fromRef(ref.getName()));
+  /**
+   * Removes the users refs, the automerge refs, the kinds of refs hidden by {@code hideRefKinds}
+   * and the refs hidden by the hideRefs rules, and records the meta revision and the last patch set
+   * of the changes of the remaining refs.
+   *
+   * @return the indexes of the refs which are not removed.
+   */
+  private BitSet hideRefs(Collection<Ref> refs, ChangeRefsTable changes) {
+    try (Timer1.Context<Stage> ctx = metrics.filterLatency.start(Stage.HIDE_REFS)) {
+      int usersRefs = 0;
+      int automergeRefs = 0;
+      int auxiliaryRefs = 0;
+      int hiddenRefs = 0;
+      BitSet shownRefs = new BitSet(refs.size());
+      int refIndex = 0;
+      for (Ref ref : refs) {
+        long classifiedRef = RefClassifier.classify(ref.getName());
+        RefClassifier.Kind kind = RefClassifier.kind(classifiedRef);
+        if (kind == RefClassifier.Kind.META) {
+          changes.setMetaRevision(
+              changes.add(RefClassifier.changeNum(classifiedRef)), ref.getObjectId());
+        }
+        if (kind == RefClassifier.Kind.USERS || kind == RefClassifier.Kind.EDIT) {
+          usersRefs++;
+        } else if (kind == RefClassifier.Kind.AUTOMERGE) {
+          automergeRefs++;
+        } else if (config.isHiddenRefKind(kind)) {
+          auxiliaryRefs++;
+        } else if (!profile.isRefToShow(ref)) {
+          hiddenRefs++;
+        } else {
+          shownRefs.set(refIndex);
+          if (kind == RefClassifier.Kind.PATCH_SET) {
+            changes.addPatchSet(
+                changes.add(RefClassifier.changeNum(classifiedRef)),
+                RefClassifier.patchSet(classifiedRef));
+          }
+        }
+        refIndex++;
+      }
+      metrics.recordHiddenRefs(HideReason.USERS, usersRefs);
+      metrics.recordHiddenRefs(HideReason.AUTOMERGE, automergeRefs);
+      metrics.recordHiddenRefs(HideReason.AUXILIARY, auxiliaryRefs);
+      metrics.recordHiddenRefs(HideReason.HIDE_REFS, hiddenRefs);
+      return shownRefs;
+    }
+  }
+
+  /** Records the revisions of the meta-refs, before they are removed by the ACLs of the user. */
+  private static void addMetaRevisions(Collection<Ref> refs, ChangeRefsTable changes) {
+    for (Ref ref : refs) {
+      long classifiedRef = RefClassifier.classify(ref.getName());
+      if (RefClassifier.kind(classifiedRef) == RefClassifier.Kind.META) {
+        changes.setMetaRevision(
+            changes.add(RefClassifier.changeNum(classifiedRef)), ref.getObjectId());
+      }
+    }
+  }
+
+  /**
+   * Resolves the change without loading its state when it has no meta-ref, is indexed as hidden or
+   * is known to be corrupt, otherwise marks it as loading.
+   *
+   * @return the key of the state to load, or null if the change is resolved.
+   */
+  @Nullable
+  private ChangeCacheKey resolveChange(
+      ChangeRefsTable changes, int slot, RefDatabase refDb, Instant now) {
+    int changeNum = changes.changeNum(slot);
+    ObjectId changeRevision = changes.metaRevision(slot);
+    if (changeRevision == null) {
+      changeRevision = changeRevisionFromRefDb(refDb, changeNum);
+    }
+    if (changeRevision == null) {
+      changes.setResolution(slot, Resolution.UNTRACKED);
+      return null;
+    }
+    if (isIndexedAsHidden(changeNum, changeRevision, now)) {
+      changes.setResolution(slot, Resolution.INDEXED_AS_HIDDEN);
+      return null;
+    }
+    ChangeCacheKey key = ChangeCacheKey.create(Change.id(changeNum), changeRevision, project);
+    Instant corruptSince = corruptChanges.detectedOn(key);
+    if (corruptSince != null) {
+      changes.setCorrupt(slot, corruptSince);
+      return null;
+    }
+    changes.setLoading(slot, key);
+    return key;
   }
 
-  private boolean isOpen(Repository repo, Change.Id changeId, ObjectId changeRevision) {
+  /**
+   * Looks up the state of all the changes with bulk calls, so that the cache misses are loaded
+   * together by {@link ChangeStateCache.Loader#loadAll(Iterable)} on the {@link
+   * FilterRefsExecutor}, waiting at most for the remaining time budget of the filter call.
+   */
+  private Map<ChangeCacheKey, ChangeState> getChangeStates(
+      List<ChangeCacheKey> keys, long startNanos) {
     try {
-      return openChangesCache.get(ChangeCacheKey.create(repo, changeId, changeRevision, project));
-    } catch (ExecutionException e) {
+      if (timeBudget.isZero()) {
+        return executor.getAll(changeStateCache, keys);
+      }
+      return executor.getAll(
+          changeStateCache, keys, remainingTimeBudgetNanos(startNanos), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException | UncheckedExecutionException e) {
       logger.atWarning().withCause(e).log(
-          "Error getting change '%d' from the cache. Do not hide from the advertised refs",
-          changeId.get());
-      return true;
+          "Error bulk loading %d changes of project '%s' from the cache. Fall back to single"
+              + " change lookups",
+          keys.size(), project);
+      return ImmutableMap.of();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.atWarning().withCause(e).log(
+          "Interrupted while bulk loading %d changes of project '%s' from the cache. Fall back to"
+              + " single change lookups",
+          keys.size(), project);
+      return ImmutableMap.of();
+    }
+  }
+
+  /**
+   * Nanoseconds left of the time budget of the filter call started at {@code startNanos}, or {@link
+   * Long#MAX_VALUE} if the time budget is unlimited.
+   */
+  private long remainingTimeBudgetNanos(long startNanos) {
+    if (timeBudget.isZero()) {
+      return Long.MAX_VALUE;
     }
+    return timeBudget.toNanos() - (System.nanoTime() - startNanos);
   }
 
-  private boolean isRecent(Repository repo, Change.Id changeId, ObjectId changeRevision) {
+  @Nullable
+  private static ObjectId changeRevisionFromRefDb(RefDatabase refDb, int changeNum) {
     try {
-      Timestamp cutOffTs =
-          Timestamp.from(
-              Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(closedChangesGraceTime));
-      return changesTsCache
-              .get(ChangeCacheKey.create(repo, changeId, changeRevision, project))
-              .longValue()
-          >= cutOffTs.getTime();
-
-    } catch (ExecutionException e) {
+      Ref metaRef = refDb.exactRef(RefNames.changeMetaRef(Change.id(changeNum)));
+      return metaRef != null ? metaRef.getObjectId() : null;
+    } catch (IOException e) {
       logger.atWarning().withCause(e).log(
-          "Error getting change '%d' from the cache. Do not hide from the advertised refs",
-          changeId.get());
-      return true;
+          "Error looking up change '%d' meta-ref from refs db.", changeNum);
+      return null;
+    }
+  }
+
+  /**
+   * Whether the change is indexed as closed at its current meta revision and is hidden by the grace
+   * time of this filter call, which can differ from the one it was indexed with.
+   */
+  private boolean isIndexedAsHidden(int changeNum, ObjectId changeRevision, Instant now) {
+    long lastUpdatedOn = hiddenChanges.lastUpdatedOn(changeNum, changeRevision);
+    return lastUpdatedOn != HiddenChangesIndex.MISSING
+        && now.isAfter(Instant.ofEpochMilli(lastUpdatedOn).plus(closedChangesGraceTime));
+  }
+
+  /**
+   * Whether the patch set is older than the last {@code keepLastPatchSets} advertised patch sets of
+   * its change.
+   */
+  private boolean isOldPatchSet(int patchSet, int lastPatchSet) {
+    return keepLastPatchSets > 0 && patchSet <= lastPatchSet - keepLastPatchSets;
+  }
+
+  /**
+   * Returns the state of the change, or null if it is unknown or the change has been detected as
+   * corrupt by the bulk load.
+   */
+  @Nullable
+  private ChangeState changeState(
+      ChangeCacheKey changeKey, Map<ChangeCacheKey, ChangeState> changeStates) {
+    ChangeState changeState = changeStates.get(changeKey);
+    if (changeState != null || corruptChanges.detectedOn(changeKey) != null) {
+      return changeState;
+    }
+    try {
+      return changeStateCache.get(changeKey);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (corruptChanges.detectedOn(changeKey) == null) {
+        logger.atWarning().withCause(e).log(
+            "Error getting change '%d' from the cache. Do not hide from the advertised refs",
+            changeKey.changeId().get());
+      }
+      return null;
     }
   }
 
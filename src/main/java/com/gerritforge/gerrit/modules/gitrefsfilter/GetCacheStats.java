@@ -0,0 +1,127 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.CorruptChanges.CORRUPT_CHANGES_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FILTERED_REFS_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.HiddenChangesIndex.HIDDEN_CHANGES_CACHE;
+
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FilteredRefs;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * REST endpoint showing the statistics of the caches of the refs filter, with their in-memory
+ * entries per project:
+ *
+ * <pre>
+ * GET /config/server/git-refs-filter-stats
+ * </pre>
+ *
+ * <p>The entries of the {@code hidden_changes} cache are the changes indexed for each project.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.MAINTAIN_SERVER)
+public class GetCacheStats implements RestReadView<ConfigResource> {
+  public static final String VIEW_NAME = "git-refs-filter-stats";
+
+  public static class CacheStatsInfo {
+    public long entries;
+    public Map<String, Long> projects;
+    public long hits;
+    public long misses;
+
+    /** Ratio of hits over all the lookups, or null if the cache was never looked up. */
+    public Double hitRatio;
+
+    public long loads;
+    public long loadFailures;
+
+    /** Average time spent loading an entry, or null if no entry was loaded. */
+    public Double averageLoadMillis;
+  }
+
+  private final LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+  private final LoadingCache<Project.NameKey, HiddenChangesIndex> hiddenChangesCache;
+  private final Cache<ChangeCacheKey, CorruptChanges.Detection> corruptChangesCache;
+  private final Cache<FilteredRefsCache.Key, FilteredRefs> filteredRefsCache;
+
+  @Inject
+  GetCacheStats(
+      @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache,
+      @Named(HIDDEN_CHANGES_CACHE)
+          LoadingCache<Project.NameKey, HiddenChangesIndex> hiddenChangesCache,
+      @Named(CORRUPT_CHANGES_CACHE)
+          Cache<ChangeCacheKey, CorruptChanges.Detection> corruptChangesCache,
+      @Named(FILTERED_REFS_CACHE) Cache<FilteredRefsCache.Key, FilteredRefs> filteredRefsCache) {
+    this.changeStateCache = changeStateCache;
+    this.hiddenChangesCache = hiddenChangesCache;
+    this.corruptChangesCache = corruptChangesCache;
+    this.filteredRefsCache = filteredRefsCache;
+  }
+
+  @Override
+  public Response<Map<String, CacheStatsInfo>> apply(ConfigResource resource) {
+    Map<String, CacheStatsInfo> stats = new LinkedHashMap<>();
+    stats.put(CHANGE_STATE_CACHE, stats(changeStateCache, ChangeCacheKey::project, state -> 1));
+    stats.put(
+        HIDDEN_CHANGES_CACHE,
+        stats(hiddenChangesCache, Function.identity(), HiddenChangesIndex::size));
+    stats.put(
+        CORRUPT_CHANGES_CACHE, stats(corruptChangesCache, ChangeCacheKey::project, detection -> 1));
+    stats.put(
+        FILTERED_REFS_CACHE, stats(filteredRefsCache, FilteredRefsCache.Key::project, refs -> 1));
+    return Response.ok(stats);
+  }
+
+  private static <K, V> CacheStatsInfo stats(
+      Cache<K, V> cache, Function<K, Project.NameKey> project, ToIntFunction<V> entries) {
+    CacheStatsInfo info = new CacheStatsInfo();
+    Map<String, Long> projects = new TreeMap<>();
+    for (Map.Entry<K, V> entry : cache.asMap().entrySet()) {
+      long projectEntries = entries.applyAsInt(entry.getValue());
+      projects.merge(project.apply(entry.getKey()).get(), projectEntries, Long::sum);
+      info.entries += projectEntries;
+    }
+    info.projects = projects;
+
+    CacheStats cacheStats = cache.stats();
+    info.hits = cacheStats.hitCount();
+    info.misses = cacheStats.missCount();
+    if (cacheStats.requestCount() > 0) {
+      info.hitRatio = cacheStats.hitRate();
+    }
+    info.loads = cacheStats.loadCount();
+    info.loadFailures = cacheStats.loadExceptionCount();
+    if (info.loads > 0) {
+      info.averageLoadMillis = cacheStats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+    return info;
+  }
+}
@@ -0,0 +1,194 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.Weigher;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.inject.Module;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Index of the changes of a project known to be closed and hidden, each tagged with the meta
+ * revision its state was computed from, so that the filter classifies them with a single probe
+ * instead of looking up the change state caches.
+ *
+ * <p>The changes are kept in an open addressing hash table of primitive change numbers, with linear
+ * probing. An entry is valid only as long as the meta-ref of the change does not move; a change
+ * whose meta-ref moved, e.g. because it was restored, is looked up in the caches again.
+ */
+public class HiddenChangesIndex {
+  public static final String HIDDEN_CHANGES_CACHE = "hidden_changes";
+
+  /** Returned by {@link #lastUpdatedOn(int, AnyObjectId)} when the change is not indexed. */
+  static final long MISSING = Long.MIN_VALUE;
+
+  /** Default maximum number of changes, across all the projects, kept in the cache. */
+  static final long MAX_CHANGES_DEFAULT = 1_000_000L;
+
+  /** Maximum number of changes indexed per project, beyond which new changes are not indexed. */
+  static final int MAX_SIZE = 1 << 24;
+
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  private static final int EMPTY = 0;
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(HIDDEN_CHANGES_CACHE, Project.NameKey.class, HiddenChangesIndex.class)
+            .maximumWeight(MAX_CHANGES_DEFAULT)
+            .weigher(ChangesWeigher.class)
+            .loader(Loader.class);
+      }
+    };
+  }
+
+  static class Loader extends CacheLoader<Project.NameKey, HiddenChangesIndex> {
+    @Override
+    public HiddenChangesIndex load(Project.NameKey project) {
+      return new HiddenChangesIndex();
+    }
+  }
+
+  /**
+   * Weighs an index by its number of changes. The weight of an index is computed when it is put in
+   * the cache, therefore an index which grew is put again to be weighed again.
+   */
+  static class ChangesWeigher implements Weigher<Project.NameKey, HiddenChangesIndex> {
+    @Override
+    public int weigh(Project.NameKey project, HiddenChangesIndex index) {
+      return 1 + index.size();
+    }
+  }
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // Change numbers are positive, therefore EMPTY marks a free slot
+  private int[] changeNums = new int[INITIAL_CAPACITY];
+  private ObjectId[] metaRevisions = new ObjectId[INITIAL_CAPACITY];
+  private long[] lastUpdatedOns = new long[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * Returns the last update of the change, in milliseconds since the epoch, if it is indexed at the
+   * given meta revision, or {@link #MISSING} otherwise.
+   */
+  long lastUpdatedOn(int changeNum, AnyObjectId metaRevision) {
+    lock.readLock().lock();
+    try {
+      int slot = slot(changeNums, changeNum);
+      if (changeNums[slot] == EMPTY || !metaRevisions[slot].equals(metaRevision)) {
+        return MISSING;
+      }
+      return lastUpdatedOns[slot];
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Indexes the closed changes, replacing any entry at another meta revision.
+   *
+   * @return whether any change was added to the index, which then weighs more.
+   */
+  boolean putAll(Map<ChangeCacheKey, ChangeState> changeStates) {
+    if (changeStates.isEmpty()) {
+      return false;
+    }
+    lock.writeLock().lock();
+    try {
+      int previousSize = size;
+      for (Map.Entry<ChangeCacheKey, ChangeState> entry : changeStates.entrySet()) {
+        ChangeCacheKey key = entry.getKey();
+        if (entry.getValue().isOpen() || key.changeRevision() == null) {
+          continue;
+        }
+        put(key.changeId().get(), key.changeRevision(), entry.getValue().lastUpdatedOn());
+      }
+      return size > previousSize;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void put(int changeNum, ObjectId metaRevision, long lastUpdatedOn) {
+    int slot = slot(changeNums, changeNum);
+    if (changeNums[slot] == EMPTY) {
+      if (size >= MAX_SIZE) {
+        return;
+      }
+      if (2 * (size + 1) > changeNums.length) {
+        resize();
+        slot = slot(changeNums, changeNum);
+      }
+      changeNums[slot] = changeNum;
+      size++;
+    }
+    metaRevisions[slot] = metaRevision.copy();
+    lastUpdatedOns[slot] = lastUpdatedOn;
+  }
+
+  private void resize() {
+    int[] oldChangeNums = changeNums;
+    ObjectId[] oldMetaRevisions = metaRevisions;
+    long[] oldLastUpdatedOns = lastUpdatedOns;
+    changeNums = new int[oldChangeNums.length * 2];
+    metaRevisions = new ObjectId[oldChangeNums.length * 2];
+    lastUpdatedOns = new long[oldChangeNums.length * 2];
+    for (int i = 0; i < oldChangeNums.length; i++) {
+      if (oldChangeNums[i] != EMPTY) {
+        int slot = slot(changeNums, oldChangeNums[i]);
+        changeNums[slot] = oldChangeNums[i];
+        metaRevisions[slot] = oldMetaRevisions[i];
+        lastUpdatedOns[slot] = oldLastUpdatedOns[i];
+      }
+    }
+  }
+
+  /**
+   * Returns the slot of the change in an open addressing table of change numbers, or the free slot
+   * where it would be inserted.
+   */
+  static int slot(int[] changeNums, int changeNum) {
+    int mask = changeNums.length - 1;
+    int slot = mix(changeNum) & mask;
+    while (changeNums[slot] != EMPTY && changeNums[slot] != changeNum) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /** Spreads sequential change numbers across the table, see the MurmurHash3 finalizer. */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -0,0 +1,51 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Project;
+import java.time.Duration;
+
+/** Snapshot of the settings of a project, resolved with inheritance from its parents. */
+@AutoValue
+public abstract class ProjectSettings {
+
+  /** Time after which the refs of a closed change are hidden. */
+  public abstract Duration closedChangesGraceTime();
+
+  /** Inactivity time after which open changes are hidden, zero to never hide them. */
+  public abstract Duration staleOpenChangeTime();
+
+  /** Number of most recent patch sets advertised for open changes, 0 to advertise all. */
+  public abstract int keepLastPatchSets();
+
+  /** Number of changes with the highest change numbers advertised, 0 to advertise all. */
+  public abstract int maxAdvertisedChanges();
+
+  /** The project itself and all its parents, whose config updates invalidate the snapshot. */
+  public abstract ImmutableSet<Project.NameKey> projectTree();
+
+  static ProjectSettings create(
+      Duration closedChangesGraceTime,
+      Duration staleOpenChangeTime,
+      int keepLastPatchSets,
+      int maxAdvertisedChanges,
+      ImmutableSet<Project.NameKey> projectTree) {
+    return new AutoValue_ProjectSettings(
+        closedChangesGraceTime,
+        staleOpenChangeTime,
+        keepLastPatchSets,
+        maxAdvertisedChanges,
+        projectTree);
+  }
+}
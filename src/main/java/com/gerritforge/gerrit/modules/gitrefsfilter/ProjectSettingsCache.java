@@ -0,0 +1,112 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Streams;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.project.NoSuchProjectException;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class ProjectSettingsCache {
+  public static final String PROJECT_SETTINGS_CACHE = "project_settings";
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(PROJECT_SETTINGS_CACHE, Project.NameKey.class, ProjectSettings.class)
+            .loader(Loader.class);
+        DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(ConfigUpdateListener.class);
+      }
+    };
+  }
+
+  @Singleton
+  static class Loader extends CacheLoader<Project.NameKey, ProjectSettings> {
+    private final ProjectCache projectCache;
+    private final FilterRefsConfig config;
+
+    @Inject
+    Loader(ProjectCache projectCache, FilterRefsConfig config) {
+      this.projectCache = projectCache;
+      this.config = config;
+    }
+
+    @Override
+    public ProjectSettings load(Project.NameKey project) throws NoSuchProjectException {
+      ProjectState projectState =
+          projectCache.get(project).orElseThrow(() -> new NoSuchProjectException(project));
+      return ProjectSettings.create(
+          Duration.ofSeconds(config.getClosedChangeGraceTimeSec(projectState)),
+          Duration.ofSeconds(config.getStaleOpenChangeSec(projectState)),
+          config.getKeepLastPatchSets(projectState),
+          config.getMaxAdvertisedChanges(projectState),
+          Streams.stream(projectState.tree())
+              .map(ProjectState::getNameKey)
+              .collect(toImmutableSet()));
+    }
+  }
+
+  /**
+   * Invalidates the settings of the projects inheriting from a project whose {@code
+   * refs/meta/config} is updated.
+   */
+  @Singleton
+  static class ConfigUpdateListener implements GitReferenceUpdatedListener {
+    private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+    private final LoadingCache<Project.NameKey, ProjectSettings> projectSettingsCache;
+
+    @Inject
+    ConfigUpdateListener(
+        @Named(PROJECT_SETTINGS_CACHE)
+            LoadingCache<Project.NameKey, ProjectSettings> projectSettingsCache) {
+      this.projectSettingsCache = projectSettingsCache;
+    }
+
+    @Override
+    public void onGitReferenceUpdated(Event event) {
+      if (!RefNames.REFS_CONFIG.equals(event.getRefName())) {
+        return;
+      }
+      Project.NameKey updatedProject = Project.nameKey(event.getProjectName());
+      List<Project.NameKey> staleProjects =
+          projectSettingsCache.asMap().entrySet().stream()
+              .filter(e -> e.getValue().projectTree().contains(updatedProject))
+              .map(Map.Entry::getKey)
+              .collect(Collectors.toList());
+      logger.atFine().log(
+          "Config of project '%s' updated: invalidating the settings of %d projects",
+          updatedProject, staleProjects.size());
+      projectSettingsCache.invalidate(updatedProject);
+      projectSettingsCache.invalidateAll(staleProjects);
+    }
+  }
+}
@@ -0,0 +1,232 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.RefNames;
+
+/**
+ * Decodes the kind of a ref, and the numbers of its change and patch set, with a single scan of its
+ * name and without allocating, so that the filter does not run {@link Change.Id#fromRef}, {@link
+ * PatchSet.Id#fromRef} and {@link RefNames#isNoteDbMetaRef} on every ref.
+ *
+ * <p>The result is packed in a {@code long}, read with {@link #kind(long)}, {@link
+ * #changeNum(long)} and {@link #patchSet(long)}: the change number in the low 32 bits, the patch
+ * set number in the following 28 bits and the kind in the highest 4 bits. A change ref is only
+ * classified as such when {@link Change.Id#fromRef} would parse its change number, i.e. when its
+ * shard matches the change number.
+ */
+final class RefClassifier {
+
+  enum Kind {
+    /** Any ref not classified by another kind. */
+    OTHER,
+    /** {@code refs/heads/*}. */
+    BRANCH,
+    /** {@code refs/tags/*}. */
+    TAG,
+    /** {@code refs/changes/XX/<change>/<patch set>}. */
+    PATCH_SET,
+    /** {@code refs/changes/XX/<change>/meta}. */
+    META,
+    /** {@code refs/changes/XX/<change>/robot-comments}. */
+    ROBOT_COMMENTS,
+    /** {@code refs/draft-comments/XX/<change>/<account>}. */
+    DRAFT_COMMENTS,
+    /** {@code refs/starred-changes/XX/<change>/<account>}. */
+    STARRED_CHANGES,
+    /** {@code refs/users/XX/<account>/edit-<change>/<patch set>}. */
+    EDIT,
+    /** Any other {@code refs/users/*}. */
+    USERS,
+    /** {@code refs/cache-automerge/*}. */
+    AUTOMERGE,
+    /** {@code refs/sequences/*}. */
+    SEQUENCES;
+
+    /** Whether the ref belongs to the change with the number decoded from its name. */
+    boolean isChangeRef() {
+      return this == PATCH_SET || this == META || this == ROBOT_COMMENTS;
+    }
+  }
+
+  private static final Kind[] KINDS = Kind.values();
+
+  private static final int KIND_SHIFT = 60;
+  private static final int PATCH_SET_SHIFT = 32;
+  private static final long PATCH_SET_MASK = (1L << (KIND_SHIFT - PATCH_SET_SHIFT)) - 1;
+
+  private static final String REFS = "refs/";
+  private static final String HEADS = "heads/";
+  private static final String TAGS = "tags/";
+  private static final String CHANGES = "changes/";
+  private static final String DRAFT_COMMENTS = "draft-comments/";
+  private static final String STARRED_CHANGES = "starred-changes/";
+  private static final String USERS = "users/";
+  private static final String CACHE_AUTOMERGE = "cache-automerge/";
+  private static final String SEQUENCES = "sequences/";
+  private static final String META = "meta";
+  private static final String ROBOT_COMMENTS = "robot-comments";
+  private static final String EDIT = "edit-";
+
+  private static final long OTHER_REF = pack(Kind.OTHER, 0, 0);
+  private static final long USERS_REF = pack(Kind.USERS, 0, 0);
+
+  private RefClassifier() {}
+
+  static long classify(String refName) {
+    if (!refName.startsWith(REFS)) {
+      return OTHER_REF;
+    }
+    int pos = REFS.length();
+    if (refName.startsWith(CHANGES, pos)) {
+      return classifyChangeRef(refName, pos + CHANGES.length());
+    }
+    if (refName.startsWith(HEADS, pos)) {
+      return pack(Kind.BRANCH, 0, 0);
+    }
+    if (refName.startsWith(TAGS, pos)) {
+      return pack(Kind.TAG, 0, 0);
+    }
+    if (refName.startsWith(USERS, pos)) {
+      return classifyUsersRef(refName, pos + USERS.length());
+    }
+    if (refName.startsWith(CACHE_AUTOMERGE, pos)) {
+      return pack(Kind.AUTOMERGE, 0, 0);
+    }
+    if (refName.startsWith(DRAFT_COMMENTS, pos)) {
+      return classifyAllUsersRef(refName, pos + DRAFT_COMMENTS.length(), Kind.DRAFT_COMMENTS);
+    }
+    if (refName.startsWith(STARRED_CHANGES, pos)) {
+      return classifyAllUsersRef(refName, pos + STARRED_CHANGES.length(), Kind.STARRED_CHANGES);
+    }
+    if (refName.startsWith(SEQUENCES, pos)) {
+      return pack(Kind.SEQUENCES, 0, 0);
+    }
+    return OTHER_REF;
+  }
+
+  static Kind kind(long ref) {
+    return KINDS[(int) (ref >>> KIND_SHIFT)];
+  }
+
+  /** Number of the change of the ref, or 0 if it does not belong to a change. */
+  static int changeNum(long ref) {
+    return (int) ref;
+  }
+
+  /** Number of the patch set of the ref, or 0 if it is not a patch set or change edit. */
+  static int patchSet(long ref) {
+    return (int) ((ref >>> PATCH_SET_SHIFT) & PATCH_SET_MASK);
+  }
+
+  /** Classifies {@code XX/<change>/<patch set>|meta|robot-comments} starting at {@code pos}. */
+  private static long classifyChangeRef(String refName, int pos) {
+    int changeEnd = shardedNumberEnd(refName, pos);
+    if (changeEnd < 0 || changeEnd == refName.length()) {
+      return OTHER_REF;
+    }
+    int changeNum = parseNumber(refName, pos + 3, changeEnd);
+    int suffix = changeEnd + 1;
+    if (refName.length() - suffix == META.length() && refName.startsWith(META, suffix)) {
+      return pack(Kind.META, changeNum, 0);
+    }
+    if (refName.length() - suffix == ROBOT_COMMENTS.length()
+        && refName.startsWith(ROBOT_COMMENTS, suffix)) {
+      return pack(Kind.ROBOT_COMMENTS, changeNum, 0);
+    }
+    int patchSet = parseNumber(refName, suffix, refName.length());
+    if (patchSet <= 0 || patchSet > PATCH_SET_MASK) {
+      return OTHER_REF;
+    }
+    return pack(Kind.PATCH_SET, changeNum, patchSet);
+  }
+
+  /** Classifies {@code XX/<change>/<account>} starting at {@code pos}. */
+  private static long classifyAllUsersRef(String refName, int pos, Kind kind) {
+    int changeEnd = shardedNumberEnd(refName, pos);
+    if (changeEnd < 0 || changeEnd == refName.length()) {
+      return OTHER_REF;
+    }
+    return pack(kind, parseNumber(refName, pos + 3, changeEnd), 0);
+  }
+
+  /** Classifies {@code XX/<account>/edit-<change>/<patch set>} starting at {@code pos}. */
+  private static long classifyUsersRef(String refName, int pos) {
+    int accountEnd = shardedNumberEnd(refName, pos);
+    if (accountEnd < 0
+        || accountEnd == refName.length()
+        || !refName.startsWith(EDIT, accountEnd + 1)) {
+      return USERS_REF;
+    }
+    int changeStart = accountEnd + 1 + EDIT.length();
+    int changeEnd = refName.indexOf('/', changeStart);
+    if (changeEnd < 0) {
+      return USERS_REF;
+    }
+    int changeNum = parseNumber(refName, changeStart, changeEnd);
+    int patchSet = parseNumber(refName, changeEnd + 1, refName.length());
+    if (changeNum <= 0 || patchSet <= 0 || patchSet > PATCH_SET_MASK) {
+      return USERS_REF;
+    }
+    return pack(Kind.EDIT, changeNum, patchSet);
+  }
+
+  /**
+   * Returns the end of {@code XX/<number>} starting at {@code pos}, where {@code XX} are the last
+   * two digits of the number, or -1 if the name does not match.
+   */
+  private static int shardedNumberEnd(String refName, int pos) {
+    if (refName.length() < pos + 4 || refName.charAt(pos + 2) != '/') {
+      return -1;
+    }
+    int end = refName.indexOf('/', pos + 3);
+    if (end < 0) {
+      end = refName.length();
+    }
+    int number = parseNumber(refName, pos + 3, end);
+    if (number <= 0) {
+      return -1;
+    }
+    int shard = number % 100;
+    if (refName.charAt(pos) != '0' + shard / 10 || refName.charAt(pos + 1) != '0' + shard % 10) {
+      return -1;
+    }
+    return end;
+  }
+
+  /**
+   * Parses the positive decimal number between {@code start} and {@code end}, without leading
+   * zeros, or returns -1 if it is not such a number or does not fit an {@code int}.
+   */
+  private static int parseNumber(String refName, int start, int end) {
+    if (start >= end || end - start > 10 || refName.charAt(start) == '0') {
+      return -1;
+    }
+    long number = 0;
+    for (int i = start; i < end; i++) {
+      char c = refName.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      number = number * 10 + (c - '0');
+    }
+    return number <= Integer.MAX_VALUE ? (int) number : -1;
+  }
+
+  private static long pack(Kind kind, int changeNum, int patchSet) {
+    return ((long) kind.ordinal() << KIND_SHIFT)
+        | ((long) patchSet << PATCH_SET_SHIFT)
+        | (changeNum & 0xFFFFFFFFL);
+  }
+}
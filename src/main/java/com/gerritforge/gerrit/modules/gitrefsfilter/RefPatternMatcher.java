@@ -0,0 +1,122 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import com.google.gerrit.common.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Matches ref names against the hideRefs rules, compiled into a prefix trie.
+ *
+ * <p>A rule matches all the refs starting with its pattern, where a {@code *} matches any sequence
+ * of characters within a single ref name segment, i.e. without {@code /}. When more than one rule
+ * matches a ref, the one matching the longest part of the ref name wins, and show rules win over
+ * hide rules matching the same length.
+ *
+ * <p>The cost of matching a ref depends on the length of its name and on the number of {@code *} in
+ * the patterns along its path, but not on the number of rules.
+ */
+class RefPatternMatcher {
+  private static final char WILDCARD = '*';
+  private static final char SEGMENT_SEPARATOR = '/';
+
+  private final Node root = new Node();
+  private boolean empty = true;
+
+  static RefPatternMatcher compile(Iterable<String> hidePatterns, Iterable<String> showPatterns) {
+    RefPatternMatcher matcher = new RefPatternMatcher();
+    for (String pattern : hidePatterns) {
+      matcher.add(pattern, false);
+    }
+    for (String pattern : showPatterns) {
+      matcher.add(pattern, true);
+    }
+    return matcher;
+  }
+
+  private void add(String pattern, boolean show) {
+    Node node = root;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == WILDCARD) {
+        if (node.wildcard == null) {
+          node.wildcard = new Node();
+        }
+        node = node.wildcard;
+      } else {
+        node = node.children.computeIfAbsent(c, k -> new Node());
+      }
+    }
+    node.show = node.show || show;
+    node.terminal = true;
+    empty = false;
+  }
+
+  /** Returns true if the ref is not hidden by the longest matching rule. */
+  boolean isShown(String refName) {
+    if (empty) {
+      return true;
+    }
+    Match match = match(root, refName, 0, null);
+    return match == null || match.show;
+  }
+
+  @Nullable
+  private static Match match(Node node, String refName, int pos, @Nullable Match best) {
+    while (node != null) {
+      if (node.terminal) {
+        best = Match.best(best, pos, node.show);
+      }
+      if (node.wildcard != null) {
+        int segmentEnd = refName.indexOf(SEGMENT_SEPARATOR, pos);
+        if (segmentEnd < 0) {
+          segmentEnd = refName.length();
+        }
+        for (int end = pos; end <= segmentEnd; end++) {
+          best = match(node.wildcard, refName, end, best);
+        }
+      }
+      if (pos == refName.length()) {
+        break;
+      }
+      node = node.children.get(refName.charAt(pos++));
+    }
+    return best;
+  }
+
+  private static class Node {
+    final Map<Character, Node> children = new HashMap<>();
+    Node wildcard;
+    boolean terminal;
+    boolean show;
+  }
+
+  private static class Match {
+    final int length;
+    final boolean show;
+
+    Match(int length, boolean show) {
+      this.length = length;
+      this.show = show;
+    }
+
+    static Match best(@Nullable Match current, int length, boolean show) {
+      if (current == null
+          || length > current.length
+          || (length == current.length && show && !current.show)) {
+        return new Match(length, show);
+      }
+      return current;
+    }
+  }
+}
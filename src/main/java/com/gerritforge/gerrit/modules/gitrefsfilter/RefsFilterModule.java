@@ -11,8 +11,15 @@
 
 package com.gerritforge.gerrit.modules.gitrefsfilter;
 
+import static com.google.gerrit.server.config.ConfigResource.CONFIG_KIND;
+
 import com.google.gerrit.extensions.annotations.Exports;
 import com.google.gerrit.extensions.config.CapabilityDefinition;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.extensions.events.ProjectDeletedListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.extensions.restapi.RestApiModule;
+import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.server.config.ProjectConfigEntry;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.inject.AbstractModule;
@@ -24,6 +31,18 @@ public class RefsFilterModule extends AbstractModule {
   @Override
   protected void configure() {
     bind(FilterRefsConfig.class).in(Scopes.SINGLETON);
+    install(
+        new LifecycleModule() {
+          @Override
+          protected void configure() {
+            listener().to(FilterRefsExecutor.class);
+            listener().to(ChangeStateCacheWarmer.class);
+            listener().to(ChangeStateStore.class);
+            listener().to(ChangeStateSnapshot.class);
+          }
+        });
+    DynamicSet.bind(binder(), GitReferenceUpdatedListener.class).to(ChangeStateCacheWarmer.class);
+    DynamicSet.bind(binder(), ProjectDeletedListener.class).to(ChangeStateStore.class);
 
     install(
         new FactoryModuleBuilder()
@@ -51,7 +70,53 @@ public class RefsFilterModule extends AbstractModule {
                 true,
                 "Grace time for keeping closed changes from filtering by the git-refs-filter"));
 
-    install(OpenChangesCache.module());
-    install(ChangesTsCache.module());
+    bind(ProjectConfigEntry.class)
+        .annotatedWith(Exports.named(FilterRefsConfig.PROJECT_CONFIG_STALE_OPEN_CHANGE_SEC))
+        .toInstance(
+            new ProjectConfigEntry(
+                "git-refs-filter: inactivity time [sec] for stale open changes",
+                FilterRefsConfig.STALE_OPEN_CHANGE_SEC_DEFAULT,
+                true,
+                "Inactivity time after which open changes are filtered by the git-refs-filter,"
+                    + " 0 to never filter open changes"));
+
+    bind(ProjectConfigEntry.class)
+        .annotatedWith(Exports.named(FilterRefsConfig.PROJECT_CONFIG_KEEP_LAST_PATCH_SETS))
+        .toInstance(
+            new ProjectConfigEntry(
+                "git-refs-filter: number of patch sets to keep for open changes",
+                FilterRefsConfig.KEEP_LAST_PATCH_SETS_DEFAULT,
+                true,
+                "Number of most recent patch sets of open changes advertised by the"
+                    + " git-refs-filter, 0 to keep all"));
+
+    bind(ProjectConfigEntry.class)
+        .annotatedWith(Exports.named(FilterRefsConfig.PROJECT_CONFIG_MAX_ADVERTISED_CHANGES))
+        .toInstance(
+            new ProjectConfigEntry(
+                "git-refs-filter: maximum number of changes to advertise",
+                FilterRefsConfig.MAX_ADVERTISED_CHANGES_DEFAULT,
+                true,
+                "Number of changes with the highest change numbers advertised by the"
+                    + " git-refs-filter, 0 to advertise all"));
+
+    install(
+        new RestApiModule() {
+          @Override
+          protected void configure() {
+            post(CONFIG_KIND, ExportChangeStateSnapshot.VIEW_NAME)
+                .to(ExportChangeStateSnapshot.class);
+            post(CONFIG_KIND, WarmChangeStates.VIEW_NAME).to(WarmChangeStates.class);
+            get(CONFIG_KIND, GetCacheStats.VIEW_NAME).to(GetCacheStats.class);
+            post(CONFIG_KIND, FlushProjectCaches.VIEW_NAME).to(FlushProjectCaches.class);
+          }
+        });
+
+    install(ChangeStateCache.module());
+    install(FilteredRefsCache.module());
+    install(ProjectSettingsCache.module());
+    install(FilterRefsCapabilityCache.module());
+    install(HiddenChangesIndex.module());
+    install(CorruptChanges.module());
   }
 }
@@ -39,7 +39,7 @@ public class RefsFilterPermissionBackend extends PermissionBackend {
 
   @Override
   public WithUser user(CurrentUser user) {
-    return filteredRefsUserFactory.get(defaultBackend.user(user));
+    return filteredRefsUserFactory.get(defaultBackend.user(user), user);
   }
 
   @Override
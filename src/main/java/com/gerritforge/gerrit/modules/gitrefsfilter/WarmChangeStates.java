@@ -0,0 +1,155 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * REST endpoint loading the state of all the changes of some projects into the {@code change_state}
+ * cache, e.g. before a project is fetched for the first time after a restart:
+ *
+ * <pre>
+ * POST /config/server/git-refs-filter-warm
+ * </pre>
+ *
+ * <p>The states are loaded on the {@link FilterRefsExecutor}, therefore with the same bounded
+ * concurrency as the filter calls, in chunks of {@link ForProjectWrapper#CHUNK_SIZE} changes whose
+ * progress is logged. A chunk failing to load does not stop the warming: its changes left out of
+ * the cache are counted as failed.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.MAINTAIN_SERVER)
+public class WarmChangeStates implements RestModifyView<ConfigResource, WarmChangeStates.Input> {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  public static final String VIEW_NAME = "git-refs-filter-warm";
+
+  public static class Input {
+    public List<String> projects;
+  }
+
+  public static class WarmInfo {
+    /** Changes with a meta-ref in the project. */
+    public int changes;
+
+    /** Changes whose state was already cached. */
+    public int cached;
+
+    /** Changes whose state was loaded. */
+    public int loaded;
+
+    /** Changes whose state could not be loaded. */
+    public int failed;
+
+    public long elapsedMillis;
+  }
+
+  private final GitRepositoryManager repoManager;
+  private final FilterRefsExecutor executor;
+  private final LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+
+  @Inject
+  WarmChangeStates(
+      GitRepositoryManager repoManager,
+      FilterRefsExecutor executor,
+      @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache) {
+    this.repoManager = repoManager;
+    this.executor = executor;
+    this.changeStateCache = changeStateCache;
+  }
+
+  @Override
+  public Response<Map<String, WarmInfo>> apply(ConfigResource resource, Input input)
+      throws Exception {
+    if (input == null || input.projects == null || input.projects.isEmpty()) {
+      throw new BadRequestException("projects are required");
+    }
+    Map<String, WarmInfo> infos = new LinkedHashMap<>();
+    for (String projectName : input.projects) {
+      infos.put(projectName, warm(Project.nameKey(projectName)));
+    }
+    return Response.ok(infos);
+  }
+
+  private WarmInfo warm(Project.NameKey project) throws Exception {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    List<ChangeCacheKey> keys = metaRefKeys(project);
+    WarmInfo info = new WarmInfo();
+    info.changes = keys.size();
+    for (List<ChangeCacheKey> chunk : Lists.partition(keys, ForProjectWrapper.CHUNK_SIZE)) {
+      int cached = changeStateCache.getAllPresent(chunk).size();
+      try {
+        executor.getAll(changeStateCache, chunk);
+      } catch (ExecutionException | UncheckedExecutionException e) {
+        logger.atWarning().withCause(e).log(
+            "Unable to load %d changes of project '%s'", chunk.size(), project);
+      }
+      int found = changeStateCache.getAllPresent(chunk).size();
+      info.cached += cached;
+      info.loaded += found - cached;
+      info.failed += chunk.size() - found;
+      logger.atInfo().log(
+          "Warmed %d/%d changes of project '%s'",
+          info.cached + info.loaded + info.failed, info.changes, project);
+    }
+    info.elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    return info;
+  }
+
+  private List<ChangeCacheKey> metaRefKeys(Project.NameKey project)
+      throws IOException, UnprocessableEntityException {
+    try (Repository repo = repoManager.openRepository(project)) {
+      List<ChangeCacheKey> keys = new ArrayList<>();
+      for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES)) {
+        long classifiedRef = RefClassifier.classify(ref.getName());
+        if (RefClassifier.kind(classifiedRef) == RefClassifier.Kind.META) {
+          keys.add(
+              ChangeCacheKey.create(
+                  Change.id(RefClassifier.changeNum(classifiedRef)), ref.getObjectId(), project));
+        }
+      }
+      return keys;
+    } catch (RepositoryNotFoundException e) {
+      throw new UnprocessableEntityException(String.format("project %s not found", project), e);
+    }
+  }
+}
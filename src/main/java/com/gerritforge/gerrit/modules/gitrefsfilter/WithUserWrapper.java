@@ -11,46 +11,82 @@
 
 package com.gerritforge.gerrit.modules.gitrefsfilter;
 
+import static com.gerritforge.gerrit.modules.gitrefsfilter.FilterRefsCapabilityCache.FILTER_REFS_CAPABILITY_CACHE;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.LoadingCache;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.api.access.GlobalOrPluginPermission;
 import com.google.gerrit.extensions.conditions.BooleanCondition;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.permissions.PermissionBackend.ForProject;
 import com.google.gerrit.server.permissions.PermissionBackend.WithUser;
 import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.name.Named;
 import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 public class WithUserWrapper extends WithUser {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   private final FilterRefsPermission filterRefsPermission;
   private final WithUser defaultWithUser;
   private final ForProjectWrapper.Factory forProjectFactory;
+  private final LoadingCache<Account.Id, Boolean> capabilityCache;
+  private final CurrentUser user;
+  private final Supplier<FilterProfile> profile;
 
   public interface Factory {
-    WithUserWrapper get(WithUser defaultWithUser);
+    WithUserWrapper get(WithUser defaultWithUser, CurrentUser user);
   }
 
   @Inject
   WithUserWrapper(
       FilterRefsPermission filterRefsPermission,
       ForProjectWrapper.Factory forProjectFactory,
-      @Assisted WithUser defaultWithUser) {
+      FilterProfiles filterProfiles,
+      @Named(FILTER_REFS_CAPABILITY_CACHE) LoadingCache<Account.Id, Boolean> capabilityCache,
+      @Assisted WithUser defaultWithUser,
+      @Assisted CurrentUser user) {
     this.filterRefsPermission = filterRefsPermission;
     this.defaultWithUser = defaultWithUser;
     this.forProjectFactory = forProjectFactory;
+    this.capabilityCache = capabilityCache;
+    this.user = user;
+    this.profile = Suppliers.memoize(() -> filterProfiles.forUser(user));
   }
 
   @Override
   public ForProject project(Project.NameKey project) {
     ForProject defaultWithProject = defaultWithUser.project(project);
-    if (defaultWithUser.testOrFalse(filterRefsPermission)) {
-      return forProjectFactory.get(defaultWithProject, project);
+    if (canFilterRefs()) {
+      return forProjectFactory.get(defaultWithProject, project, user, profile.get());
     }
     return defaultWithProject;
   }
 
+  private boolean canFilterRefs() {
+    if (!user.isIdentifiedUser()) {
+      return defaultWithUser.testOrFalse(filterRefsPermission);
+    }
+    try {
+      return capabilityCache.get(user.getAccountId());
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      logger.atWarning().withCause(e).log(
+          "Error getting the %s capability of account %d from the cache",
+          FilterRefsCapability.HIDE_CLOSED_CHANGES_REFS, user.getAccountId().get());
+      return defaultWithUser.testOrFalse(filterRefsPermission);
+    }
+  }
+
   @Override
   public void check(GlobalOrPluginPermission perm)
       throws AuthException, PermissionBackendException {
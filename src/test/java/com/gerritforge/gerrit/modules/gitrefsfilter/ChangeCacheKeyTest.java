@@ -12,36 +12,44 @@
 package com.gerritforge.gerrit.modules.gitrefsfilter;
 
 import static com.google.common.truth.Truth.assertThat;
-import static org.mockito.Mockito.mock;
 
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.Project.NameKey;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Repository;
 import org.junit.Test;
 
 public class ChangeCacheKeyTest {
   private static final String REPO_NAME = "test_repo";
   private static final Change.Id ID = Change.id(10000);
-  private static final ObjectId CHANGE_REVISION = ObjectId.zeroId();
+  private static final ObjectId CHANGE_REVISION =
+      ObjectId.fromString("0123456789abcdef0123456789abcdef01234567");
   private static final NameKey TEST_REPO = Project.nameKey(REPO_NAME);
 
   @Test
-  public void shouldExcludeRepoFieldDuringEqualsCalculation() {
-    ChangeCacheKey cacheKey1 =
-        ChangeCacheKey.create(mock(Repository.class), ID, CHANGE_REVISION, TEST_REPO);
-    ChangeCacheKey cacheKey2 =
-        ChangeCacheKey.create(mock(Repository.class), ID, CHANGE_REVISION, TEST_REPO);
-    assertThat(cacheKey1).isEqualTo(cacheKey2);
+  public void shouldRoundTripThroughSerializer() {
+    ChangeCacheKey cacheKey = ChangeCacheKey.create(ID, CHANGE_REVISION, TEST_REPO);
+
+    assertThat(roundTrip(cacheKey)).isEqualTo(cacheKey);
+  }
+
+  @Test
+  public void shouldRoundTripWithoutChangeRevisionThroughSerializer() {
+    ChangeCacheKey cacheKey = ChangeCacheKey.create(ID, null, TEST_REPO);
+
+    assertThat(roundTrip(cacheKey)).isEqualTo(cacheKey);
   }
 
   @Test
-  public void shouldExcludeRepoFieldDuringHashCodeCalculation() {
-    ChangeCacheKey cacheKey1 =
-        ChangeCacheKey.create(mock(Repository.class), ID, CHANGE_REVISION, TEST_REPO);
-    ChangeCacheKey cacheKey2 =
-        ChangeCacheKey.create(mock(Repository.class), ID, CHANGE_REVISION, TEST_REPO);
-    assertThat(cacheKey1.hashCode()).isEqualTo(cacheKey2.hashCode());
+  public void shouldRoundTripNonAsciiProjectNameThroughSerializer() {
+    ChangeCacheKey cacheKey =
+        ChangeCacheKey.create(ID, CHANGE_REVISION, Project.nameKey("tëst/repö"));
+
+    assertThat(roundTrip(cacheKey)).isEqualTo(cacheKey);
+  }
+
+  private static ChangeCacheKey roundTrip(ChangeCacheKey cacheKey) {
+    ChangeCacheKey.Serializer serializer = ChangeCacheKey.Serializer.INSTANCE;
+    return serializer.deserialize(serializer.serialize(cacheKey));
   }
 }
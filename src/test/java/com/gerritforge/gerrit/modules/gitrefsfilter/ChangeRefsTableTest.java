@@ -0,0 +1,86 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class ChangeRefsTableTest {
+  private static final ObjectId META =
+      ObjectId.fromString("1111111111111111111111111111111111111111");
+
+  private final ChangeRefsTable changes = new ChangeRefsTable();
+
+  @Test
+  public void shouldKeepChangesAcrossResizes() {
+    for (int changeNum = 1; changeNum <= 10_000; changeNum++) {
+      int slot = changes.add(changeNum);
+      changes.addPatchSet(slot, changeNum % 7 + 1);
+      if (changeNum % 2 == 0) {
+        changes.setMetaRevision(slot, META);
+      }
+    }
+
+    for (int changeNum = 1; changeNum <= 10_000; changeNum++) {
+      int slot = changes.add(changeNum);
+      assertThat(changes.changeNum(slot)).isEqualTo(changeNum);
+      assertThat(changes.lastPatchSet(slot)).isEqualTo(changeNum % 7 + 1);
+      assertThat(changes.metaRevision(slot)).isEqualTo(changeNum % 2 == 0 ? META : null);
+      assertThat(changes.resolution(slot)).isEqualTo(ChangeRefsTable.Resolution.UNRESOLVED);
+    }
+  }
+
+  @Test
+  public void shouldKeepTheLastAdvertisedPatchSet() {
+    int slot = changes.add(1);
+    changes.addPatchSet(slot, 3);
+    changes.addPatchSet(slot, 1);
+
+    assertThat(changes.lastPatchSet(slot)).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldNotLimitWhenAdvertisingFewerChanges() {
+    changes.setAdvertised(changes.add(1));
+    changes.setAdvertised(changes.add(2));
+
+    assertThat(changes.lowestOfLatestAdvertised(2)).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldSelectTheLatestAdvertisedChanges() {
+    List<Integer> advertisedChangeNums = new ArrayList<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 5_000; i++) {
+      int changeNum = 1 + random.nextInt(1_000_000);
+      int slot = changes.add(changeNum);
+      if (random.nextBoolean()) {
+        if (!advertisedChangeNums.contains(changeNum)) {
+          advertisedChangeNums.add(changeNum);
+        }
+        changes.setAdvertised(slot);
+        changes.setAdvertised(slot);
+      }
+    }
+    Collections.sort(advertisedChangeNums, Collections.reverseOrder());
+
+    assertThat(changes.advertisedChanges()).isEqualTo(advertisedChangeNums.size());
+    assertThat(changes.lowestOfLatestAdvertised(100)).isEqualTo(advertisedChangeNums.get(99));
+    assertThat(changes.lowestOfLatestAdvertised(1)).isEqualTo(advertisedChangeNums.get(0));
+  }
+}
@@ -0,0 +1,187 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.api.changes.NotifyHandling;
+import com.google.gerrit.extensions.common.AccountInfo;
+import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.testing.InMemoryRepositoryManager;
+import java.time.Duration;
+import java.time.Instant;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeStateCacheWarmerTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("test_repo");
+  private static final Project.NameKey ALL_USERS = Project.nameKey("All-Users");
+  private static final Change.Id CHANGE_ID = Change.id(1);
+
+  private final InMemoryRepositoryManager repoManager = new InMemoryRepositoryManager();
+  private final FilterRefsMetrics metrics = new FilterRefsMetrics(new DisabledMetricMaker());
+  private final CorruptChanges corruptChanges =
+      new CorruptChanges(CacheBuilder.newBuilder().build(), metrics);
+  private LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+  private ChangeStateCacheWarmer warmer;
+
+  @Before
+  public void setUp() {
+    FilterRefsConfig config = new FilterRefsConfig(new Config(), null);
+    changeStateCache =
+        CacheBuilder.newBuilder()
+            .build(
+                new ChangeStateCache.Loader(
+                    repoManager,
+                    null,
+                    metrics,
+                    new ChangeStateStore(config, null),
+                    corruptChanges));
+    warmer = new ChangeStateCacheWarmer(config, metrics, changeStateCache);
+  }
+
+  @After
+  public void tearDown() {
+    warmer.stop();
+  }
+
+  @Test
+  public void shouldWarmTheStateOfAChangeFromItsMetaRef() throws Exception {
+    ChangeCacheKey metaKey = updateMetaRef();
+
+    assertThat(awaitWarmed(metaKey).status()).isEqualTo(Change.Status.NEW);
+  }
+
+  @Test
+  public void shouldIgnoreTheUpdatesOfOtherNoteDbRefs() throws Exception {
+    ObjectId robotComments =
+        commit(PROJECT, "Robot comments\n\nPatch-set: 1\n", "refs/changes/01/1/robot-comments");
+    ObjectId draftComments =
+        commit(ALL_USERS, "Update draft comments\n", "refs/draft-comments/01/1/1000000");
+    ObjectId starredChanges =
+        commit(ALL_USERS, "Update star labels\n", "refs/starred-changes/01/1/1000000");
+
+    ChangeCacheKey metaKey = updateMetaRef();
+    awaitWarmed(metaKey);
+
+    assertThat(changeStateCache.asMap().keySet()).containsExactly(metaKey);
+    assertThat(corruptChanges.detectedOn(key(robotComments, PROJECT))).isNull();
+    assertThat(corruptChanges.detectedOn(key(draftComments, ALL_USERS))).isNull();
+    assertThat(corruptChanges.detectedOn(key(starredChanges, ALL_USERS))).isNull();
+  }
+
+  /**
+   * Creates the meta-ref of the change after the other updates: the warmer has a single thread, so
+   * once the meta-ref is warmed all the previous updates have been handled.
+   */
+  private ChangeCacheKey updateMetaRef() throws Exception {
+    ObjectId meta =
+        commit(PROJECT, "Create change\n\nPatch-set: 1\nStatus: new\n", "refs/changes/01/1/meta");
+    return key(meta, PROJECT);
+  }
+
+  private ChangeState awaitWarmed(ChangeCacheKey key) throws InterruptedException {
+    Instant deadline = Instant.now().plus(Duration.ofSeconds(10));
+    while (changeStateCache.getIfPresent(key) == null && Instant.now().isBefore(deadline)) {
+      Thread.sleep(10);
+    }
+    assertThat(changeStateCache.getIfPresent(key)).isNotNull();
+    return changeStateCache.getIfPresent(key);
+  }
+
+  private ObjectId commit(Project.NameKey project, String message, String refName)
+      throws Exception {
+    Repository repo;
+    try {
+      repo = repoManager.openRepository(project);
+    } catch (Exception e) {
+      repo = repoManager.createRepository(project);
+    }
+    try (TestRepository<Repository> tr = new TestRepository<>(repo)) {
+      RevCommit commit = tr.branch(refName).commit().message(message).create();
+      warmer.onGitReferenceUpdated(new RefUpdatedEvent(project, refName, commit));
+      return commit;
+    }
+  }
+
+  private static ChangeCacheKey key(ObjectId revision, Project.NameKey project) {
+    return ChangeCacheKey.create(CHANGE_ID, revision, project);
+  }
+
+  private static class RefUpdatedEvent implements GitReferenceUpdatedListener.Event {
+    private final Project.NameKey project;
+    private final String refName;
+    private final ObjectId newObjectId;
+
+    RefUpdatedEvent(Project.NameKey project, String refName, ObjectId newObjectId) {
+      this.project = project;
+      this.refName = refName;
+      this.newObjectId = newObjectId;
+    }
+
+    @Override
+    public String getProjectName() {
+      return project.get();
+    }
+
+    @Override
+    public String getRefName() {
+      return refName;
+    }
+
+    @Override
+    public String getOldObjectId() {
+      return ObjectId.zeroId().name();
+    }
+
+    @Override
+    public String getNewObjectId() {
+      return newObjectId.name();
+    }
+
+    @Override
+    public boolean isCreate() {
+      return true;
+    }
+
+    @Override
+    public boolean isDelete() {
+      return false;
+    }
+
+    @Override
+    public boolean isNonFastForward() {
+      return false;
+    }
+
+    @Override
+    public AccountInfo getUpdater() {
+      return null;
+    }
+
+    @Override
+    public NotifyHandling getNotify() {
+      return NotifyHandling.ALL;
+    }
+  }
+}
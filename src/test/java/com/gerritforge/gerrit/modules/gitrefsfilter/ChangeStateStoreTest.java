@@ -0,0 +1,154 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.config.SitePaths;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChangeStateStoreTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("parent/project");
+  private static final long LAST_UPDATED_ON = 1_700_000_000_123L;
+  private static final ObjectId META_1 =
+      ObjectId.fromString("1111111111111111111111111111111111111111");
+  private static final ObjectId META_2 =
+      ObjectId.fromString("2222222222222222222222222222222222222222");
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private SitePaths sitePaths;
+  private ChangeStateStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    sitePaths = new SitePaths(tempFolder.getRoot().toPath());
+    store = newStore("mmap");
+  }
+
+  @After
+  public void tearDown() {
+    store.stop();
+  }
+
+  @Test
+  public void shouldReturnTheStoredStateAtTheSameMetaRevision() {
+    ChangeState state = ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON);
+    store.put(key(1, META_1), state);
+
+    assertThat(store.get(key(1, META_1))).isEqualTo(state);
+    assertThat(store.get(key(1, META_2))).isNull();
+    assertThat(store.get(key(2, META_1))).isNull();
+  }
+
+  @Test
+  public void shouldReplaceTheStateWhenTheMetaRevisionMoves() {
+    store.put(key(1, META_1), ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON));
+    ChangeState abandoned = ChangeState.create(Change.Status.ABANDONED, LAST_UPDATED_ON + 1);
+    store.put(key(1, META_2), abandoned);
+
+    assertThat(store.get(key(1, META_1))).isNull();
+    assertThat(store.get(key(1, META_2))).isEqualTo(abandoned);
+  }
+
+  @Test
+  public void shouldStoreChangesBeyondTheFirstSegment() {
+    int changeNum = 3 * ChangeStateStore.ProjectFile.SEGMENT_CHANGES + 7;
+    ChangeState state = ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON);
+    store.put(key(changeNum, META_1), state);
+
+    assertThat(store.get(key(changeNum, META_1))).isEqualTo(state);
+    assertThat(store.get(key(7, META_1))).isNull();
+  }
+
+  @Test
+  public void shouldSurviveRestarts() {
+    ChangeState state = ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON);
+    store.put(key(42, META_1), state);
+    store.stop();
+
+    store = newStore("mmap");
+
+    assertThat(store.get(key(42, META_1))).isEqualTo(state);
+    assertThat(Files.exists(storeFile())).isTrue();
+  }
+
+  @Test
+  public void shouldNotGrowTheFileOnLookupsBeyondItsEnd() throws Exception {
+    store.put(key(1, META_1), ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON));
+    long size = Files.size(storeFile());
+
+    assertThat(store.get(key(10 * ChangeStateStore.ProjectFile.SEGMENT_CHANGES, META_1))).isNull();
+    assertThat(Files.size(storeFile())).isEqualTo(size);
+  }
+
+  @Test
+  public void shouldDeleteTheFileOfAProject() {
+    store.put(key(1, META_1), ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON));
+
+    assertThat(store.delete(PROJECT)).isTrue();
+    assertThat(Files.exists(storeFile())).isFalse();
+    assertThat(store.delete(PROJECT)).isFalse();
+    assertThat(store.get(key(1, META_1))).isNull();
+  }
+
+  @Test
+  public void shouldDiscardAFileWithAnUnknownFormat() throws Exception {
+    store.stop();
+    Files.createDirectories(storeFile().getParent());
+    Files.write(storeFile(), new byte[] {1, 2, 3});
+
+    store = newStore("mmap");
+
+    assertThat(store.get(key(1, META_1))).isNull();
+    ChangeState state = ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON);
+    store.put(key(1, META_1), state);
+    assertThat(store.get(key(1, META_1))).isEqualTo(state);
+  }
+
+  @Test
+  public void shouldNotStoreAnythingWhenDisabled() {
+    store = newStore("none");
+    store.put(key(1, META_1), ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON));
+
+    assertThat(store.isEnabled()).isFalse();
+    assertThat(store.get(key(1, META_1))).isNull();
+  }
+
+  private ChangeStateStore newStore(String type) {
+    Config cfg = new Config();
+    cfg.setString(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_CHANGE_STATE_STORE,
+        type);
+    return new ChangeStateStore(new FilterRefsConfig(cfg, null), sitePaths);
+  }
+
+  private Path storeFile() {
+    return sitePaths.data_dir.resolve("git-refs-filter/parent/project.states");
+  }
+
+  private static ChangeCacheKey key(int changeNum, ObjectId metaRevision) {
+    return ChangeCacheKey.create(Change.id(changeNum), metaRevision, PROJECT);
+  }
+}
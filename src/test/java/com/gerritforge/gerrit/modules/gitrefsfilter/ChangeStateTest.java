@@ -0,0 +1,71 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.entities.Change;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+
+public class ChangeStateTest {
+  private static final long LAST_UPDATED_ON = 1_700_000_000_000L;
+  private static final Duration GRACE_TIME = Duration.ofHours(1);
+
+  @Test
+  public void shouldNeverHideOpenChanges() {
+    ChangeState state = ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON);
+
+    assertThat(state.isOpen()).isTrue();
+    assertThat(state.hideAfter(GRACE_TIME)).isEqualTo(Instant.MAX);
+  }
+
+  @Test
+  public void shouldHideClosedChangesAfterGraceTime() {
+    ChangeState state = ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON);
+
+    assertThat(state.isOpen()).isFalse();
+    assertThat(state.hideAfter(GRACE_TIME))
+        .isEqualTo(Instant.ofEpochMilli(LAST_UPDATED_ON).plus(GRACE_TIME));
+  }
+
+  @Test
+  public void shouldHideStaleOpenChangesAfterStaleTime() {
+    ChangeState state = ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON);
+    Duration staleTime = Duration.ofDays(30);
+
+    assertThat(state.hideAfter(GRACE_TIME, staleTime))
+        .isEqualTo(Instant.ofEpochMilli(LAST_UPDATED_ON).plus(staleTime));
+    assertThat(state.hideAfter(GRACE_TIME, Duration.ZERO)).isEqualTo(Instant.MAX);
+  }
+
+  @Test
+  public void shouldNotApplyStaleTimeToClosedChanges() {
+    ChangeState state = ChangeState.create(Change.Status.ABANDONED, LAST_UPDATED_ON);
+
+    assertThat(state.hideAfter(GRACE_TIME, Duration.ofDays(30)))
+        .isEqualTo(Instant.ofEpochMilli(LAST_UPDATED_ON).plus(GRACE_TIME));
+  }
+
+  @Test
+  public void shouldRoundTripThroughSerializer() {
+    for (Change.Status status : Change.Status.values()) {
+      ChangeState state = ChangeState.create(status, LAST_UPDATED_ON);
+
+      assertThat(
+              ChangeState.Serializer.INSTANCE.deserialize(
+                  ChangeState.Serializer.INSTANCE.serialize(state)))
+          .isEqualTo(state);
+    }
+  }
+}
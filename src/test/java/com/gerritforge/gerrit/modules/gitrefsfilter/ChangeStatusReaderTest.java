@@ -0,0 +1,100 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.entities.Change;
+import java.util.Optional;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeStatusReaderTest {
+  private TestRepository<InMemoryRepository> tr;
+
+  @Before
+  public void setUp() throws Exception {
+    tr =
+        new TestRepository<>(
+            new InMemoryRepository(new DfsRepositoryDescription("change-status-reader")));
+  }
+
+  @Test
+  public void shouldReadStatusFromTipCommit() throws Exception {
+    RevCommit created = metaCommit("Create change\n\nPatch-set: 1\nStatus: new\n");
+    RevCommit abandoned = metaCommit("Abandoned\n\nPatch-set: 1\nStatus: abandoned\n", created);
+
+    Optional<ChangeState> changeState = read(abandoned);
+
+    assertThat(changeState).isPresent();
+    assertThat(changeState.get().status()).isEqualTo(Change.Status.ABANDONED);
+    assertThat(changeState.get().lastUpdatedOn()).isEqualTo(commitTime(abandoned));
+  }
+
+  @Test
+  public void shouldWalkBackWhenTipCommitHasNoStatus() throws Exception {
+    RevCommit created = metaCommit("Create change\n\nPatch-set: 1\nStatus: new\n");
+    RevCommit merged = metaCommit("Merged\n\nPatch-set: 1\nStatus: merged\n", created);
+    RevCommit hashtags = metaCommit("Update\n\nPatch-set: 1\nHashtags: foo\n", merged);
+
+    Optional<ChangeState> changeState = read(hashtags);
+
+    assertThat(changeState).isPresent();
+    assertThat(changeState.get().status()).isEqualTo(Change.Status.MERGED);
+    assertThat(changeState.get().lastUpdatedOn()).isEqualTo(commitTime(hashtags));
+  }
+
+  @Test
+  public void shouldBeAmbiguousWithoutAnyStatus() throws Exception {
+    RevCommit created = metaCommit("Create change\n\nPatch-set: 1\n");
+
+    assertThat(read(created)).isEmpty();
+  }
+
+  @Test
+  public void shouldBeAmbiguousWithUnknownStatus() throws Exception {
+    RevCommit created = metaCommit("Create change\n\nPatch-set: 1\nStatus: draft\n");
+
+    assertThat(read(created)).isEmpty();
+  }
+
+  @Test
+  public void shouldBeAmbiguousWithMultipleStatuses() throws Exception {
+    RevCommit created = metaCommit("Create change\n\nPatch-set: 1\nStatus: new\nStatus: merged\n");
+
+    assertThat(read(created)).isEmpty();
+  }
+
+  private RevCommit metaCommit(String message, RevCommit... parents) throws Exception {
+    tr.tick(1);
+    TestRepository<InMemoryRepository>.CommitBuilder commit = tr.commit().message(message);
+    for (RevCommit parent : parents) {
+      commit.parent(parent);
+    }
+    return commit.create();
+  }
+
+  private Optional<ChangeState> read(RevCommit metaRevision) throws Exception {
+    try (RevWalk rw = new RevWalk(tr.getRepository())) {
+      return new ChangeStatusReader(rw).read(metaRevision);
+    }
+  }
+
+  private static long commitTime(RevCommit commit) {
+    return commit.getCommitterIdent().getWhenAsInstant().toEpochMilli();
+  }
+}
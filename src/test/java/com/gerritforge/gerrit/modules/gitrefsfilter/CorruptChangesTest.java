@@ -0,0 +1,118 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class CorruptChangesTest {
+  private static final ChangeCacheKey KEY =
+      ChangeCacheKey.create(
+          Change.id(1),
+          ObjectId.fromString("0123456789abcdef0123456789abcdef01234567"),
+          Project.nameKey("test_repo"));
+
+  private final TestClock clock = new TestClock();
+  private final CorruptChanges corruptChanges =
+      new CorruptChanges(
+          CacheBuilder.newBuilder().build(),
+          new FilterRefsMetrics(new DisabledMetricMaker()),
+          clock);
+
+  @Test
+  public void shouldNotKnowUnrecordedChanges() {
+    assertThat(corruptChanges.detectedOn(KEY)).isNull();
+  }
+
+  @Test
+  public void shouldKeepTheFirstDetectionOfACorruptChange() throws Exception {
+    corruptChanges.record(KEY, new IOException("first"));
+    Instant detectedOn = corruptChanges.detectedOn(KEY);
+    clock.advance(Duration.ofMinutes(1));
+    corruptChanges.record(KEY, new IOException("second"));
+
+    assertThat(detectedOn).isNotNull();
+    assertThat(corruptChanges.detectedOn(KEY)).isEqualTo(detectedOn);
+  }
+
+  @Test
+  public void shouldKeyCorruptChangesByMetaRevision() {
+    corruptChanges.record(KEY, new IOException("corrupt"));
+
+    assertThat(
+            corruptChanges.detectedOn(
+                ChangeCacheKey.create(KEY.changeId(), ObjectId.zeroId(), KEY.project())))
+        .isNull();
+  }
+
+  @Test
+  public void shouldLoadACorruptChangeAgainAfterTheRetryInterval() {
+    corruptChanges.record(KEY, new IOException("corrupt"));
+    clock.advance(CorruptChanges.RETRY_INTERVAL.plusSeconds(1));
+
+    assertThat(corruptChanges.detectedOn(KEY)).isNull();
+  }
+
+  @Test
+  public void shouldHideAChangeStillCorruptAfterTheDefaultGraceTime() {
+    Duration graceTime = Duration.ofSeconds(FilterRefsConfig.CLOSED_CHANGES_GRACE_TIME_SEC_DEFAULT);
+    Instant firstDetection = clock.instant();
+    corruptChanges.record(KEY, new IOException("corrupt"));
+    while (!clock.instant().isAfter(firstDetection.plus(graceTime))) {
+      clock.advance(CorruptChanges.RETRY_INTERVAL.plusSeconds(1));
+      assertThat(corruptChanges.detectedOn(KEY)).isNull();
+      corruptChanges.record(KEY, new IOException("still corrupt"));
+    }
+
+    Instant detectedOn = corruptChanges.detectedOn(KEY);
+    assertThat(detectedOn).isEqualTo(firstDetection);
+    assertThat(
+            ChangeState.create(Change.Status.ABANDONED, detectedOn.toEpochMilli())
+                .hideAfter(graceTime))
+        .isLessThan(clock.instant());
+  }
+
+  private static class TestClock extends Clock {
+    private Instant now = Instant.ofEpochMilli(1_700_000_000_000L);
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
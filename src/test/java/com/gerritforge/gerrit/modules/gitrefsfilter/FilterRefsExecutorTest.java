@@ -0,0 +1,205 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class FilterRefsExecutorTest {
+  private final FilterRefsExecutor executor =
+      new FilterRefsExecutor(new FilterRefsConfig(new Config(), null));
+  private final CountDownLatch loadsAllowed = new CountDownLatch(1);
+  private final LoadingCache<Integer, String> cache =
+      CacheBuilder.newBuilder()
+          .build(
+              CacheLoader.from(
+                  key -> {
+                    try {
+                      loadsAllowed.await();
+                    } catch (InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                    }
+                    return String.valueOf(key);
+                  }));
+
+  private final LoadingCache<Integer, String> cacheFailingOnOddKeys =
+      CacheBuilder.newBuilder()
+          .build(
+              new CacheLoader<Integer, String>() {
+                @Override
+                public String load(Integer key) throws IOException {
+                  if (key % 2 == 1) {
+                    throw new IOException("cannot load " + key);
+                  }
+                  return String.valueOf(key);
+                }
+
+                @Override
+                public Map<Integer, String> loadAll(Iterable<? extends Integer> keys) {
+                  Map<Integer, String> values = new HashMap<>();
+                  for (Integer key : keys) {
+                    if (key % 2 == 0) {
+                      values.put(key, String.valueOf(key));
+                    }
+                  }
+                  return values;
+                }
+              });
+
+  @After
+  public void tearDown() {
+    loadsAllowed.countDown();
+    executor.stop();
+  }
+
+  @Test
+  public void shouldKeepTheValuesBulkLoadedWithAKeyFailingToLoad() throws Exception {
+    assertThat(executor.getAll(cacheFailingOnOddKeys, ImmutableList.of(1, 2, 4)))
+        .containsExactly(2, "2", 4, "4");
+  }
+
+  @Test
+  public void shouldKeepTheValuesBulkLoadedInParallelWithAKeyFailingToLoad() throws Exception {
+    ImmutableList<Integer> keys =
+        IntStream.range(0, 2 * FilterRefsConfig.SEQUENTIAL_THRESHOLD_DEFAULT)
+            .boxed()
+            .collect(ImmutableList.toImmutableList());
+
+    assertThat(executor.getAll(cacheFailingOnOddKeys, keys))
+        .hasSize(FilterRefsConfig.SEQUENTIAL_THRESHOLD_DEFAULT);
+  }
+
+  @Test
+  public void shouldLoadInTheCallingThreadWhenTheQueueIsFull() throws Exception {
+    FilterRefsExecutor executor = newExecutorWithFullQueue();
+    try {
+      assertThat(executor.getAll(cacheFailingOnOddKeys, ImmutableList.of(10, 12)))
+          .containsExactly(10, "10", 12, "12");
+    } finally {
+      loadsAllowed.countDown();
+      executor.stop();
+    }
+  }
+
+  @Test
+  public void shouldLeaveOutTheKeysRejectedByAFullQueue() throws Exception {
+    FilterRefsExecutor executor = newExecutorWithFullQueue();
+    try {
+      assertThat(executor.getAll(cache, ImmutableList.of(4), 10, TimeUnit.SECONDS)).isEmpty();
+    } finally {
+      loadsAllowed.countDown();
+      executor.stop();
+    }
+  }
+
+  @Test
+  public void shouldReturnTheCachedValuesWhenTheLoadsTimeOut() throws Exception {
+    cache.put(1, "1");
+
+    assertThat(executor.getAll(cache, ImmutableList.of(1, 2), 10, TimeUnit.MILLISECONDS))
+        .containsExactly(1, "1");
+  }
+
+  @Test
+  public void shouldKeepLoadingInTheBackgroundAfterTheTimeout() throws Exception {
+    executor.getAll(cache, ImmutableList.of(1, 2), 10, TimeUnit.MILLISECONDS);
+    loadsAllowed.countDown();
+
+    assertThat(executor.getAll(cache, ImmutableList.of(1, 2), 10, TimeUnit.SECONDS))
+        .containsExactly(1, "1", 2, "2");
+  }
+
+  @Test
+  public void shouldNotSubmitAgainTheKeysStillLoading() throws Exception {
+    FilterRefsExecutor executor = newExecutor(1, 1);
+    ExecutorService lookups = Executors.newSingleThreadExecutor();
+    try {
+      executor.getAll(cache, ImmutableList.of(1), 0, TimeUnit.MILLISECONDS);
+      executor.getAll(cache, ImmutableList.of(1), 0, TimeUnit.MILLISECONDS);
+      executor.getAll(cache, ImmutableList.of(1), 0, TimeUnit.MILLISECONDS);
+      // Queued only if the lookups of the key 1 left the queue free
+      Future<ImmutableMap<Integer, String>> values =
+          lookups.submit(() -> executor.getAll(cache, ImmutableList.of(2), 10, TimeUnit.SECONDS));
+      loadsAllowed.countDown();
+
+      assertThat(values.get()).containsExactly(2, "2");
+    } finally {
+      lookups.shutdownNow();
+      executor.stop();
+    }
+  }
+
+  @Test
+  public void shouldWaitForTheKeysLoadingForAPreviousLookup() throws Exception {
+    executor.getAll(cache, ImmutableList.of(1), 0, TimeUnit.MILLISECONDS);
+    loadsAllowed.countDown();
+
+    assertThat(executor.getAll(cache, ImmutableList.of(1, 2), 10, TimeUnit.SECONDS))
+        .containsExactly(1, "1", 2, "2");
+  }
+
+  /**
+   * Creates an executor of 2 threads and a queue of 1 batch, both taken by loads waiting for {@link
+   * #loadsAllowed}.
+   */
+  private FilterRefsExecutor newExecutorWithFullQueue() throws Exception {
+    FilterRefsExecutor executor = newExecutor(2, 1);
+    executor.getAll(cache, ImmutableList.of(1, 2), 0, TimeUnit.MILLISECONDS);
+    executor.getAll(cache, ImmutableList.of(3), 0, TimeUnit.MILLISECONDS);
+    return executor;
+  }
+
+  private static FilterRefsExecutor newExecutor(int parallelism, int queueSize) {
+    Config gerritConfig = new Config();
+    gerritConfig.setInt(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_PARALLELISM,
+        parallelism);
+    gerritConfig.setInt(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_SEQUENTIAL_THRESHOLD,
+        1);
+    gerritConfig.setInt(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_EXECUTOR_QUEUE_SIZE,
+        queueSize);
+    return new FilterRefsExecutor(new FilterRefsConfig(gerritConfig, null));
+  }
+
+  @Test
+  public void shouldReturnAllTheValuesLoadedWithinTheTimeout() throws Exception {
+    loadsAllowed.countDown();
+
+    assertThat(executor.getAll(cache, ImmutableList.of(1, 2, 3), 10, TimeUnit.SECONDS))
+        .containsExactly(1, "1", 2, "2", 3, "3");
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Project;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class HiddenChangesIndexTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+  private static final long LAST_UPDATED_ON = 1_700_000_000_000L;
+  private static final ObjectId META_1 =
+      ObjectId.fromString("1111111111111111111111111111111111111111");
+  private static final ObjectId META_2 =
+      ObjectId.fromString("2222222222222222222222222222222222222222");
+
+  private final HiddenChangesIndex index = new HiddenChangesIndex();
+
+  @Test
+  public void shouldIndexClosedChangesAtTheirMetaRevision() {
+    index.putAll(
+        ImmutableMap.of(key(1, META_1), ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON)));
+
+    assertThat(index.lastUpdatedOn(1, META_1)).isEqualTo(LAST_UPDATED_ON);
+    assertThat(index.lastUpdatedOn(1, META_2)).isEqualTo(HiddenChangesIndex.MISSING);
+    assertThat(index.lastUpdatedOn(2, META_1)).isEqualTo(HiddenChangesIndex.MISSING);
+  }
+
+  @Test
+  public void shouldNotIndexOpenChanges() {
+    index.putAll(
+        ImmutableMap.of(key(1, META_1), ChangeState.create(Change.Status.NEW, LAST_UPDATED_ON)));
+
+    assertThat(index.lastUpdatedOn(1, META_1)).isEqualTo(HiddenChangesIndex.MISSING);
+    assertThat(index.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldReplaceTheEntryOfAChangeWhoseMetaRevisionMoved() {
+    index.putAll(
+        ImmutableMap.of(key(1, META_1), ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON)));
+    index.putAll(
+        ImmutableMap.of(
+            key(1, META_2), ChangeState.create(Change.Status.ABANDONED, LAST_UPDATED_ON + 1)));
+
+    assertThat(index.lastUpdatedOn(1, META_1)).isEqualTo(HiddenChangesIndex.MISSING);
+    assertThat(index.lastUpdatedOn(1, META_2)).isEqualTo(LAST_UPDATED_ON + 1);
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldGrowBeyondItsInitialCapacity() {
+    int changes = 100_000;
+    Map<ChangeCacheKey, ChangeState> states = new HashMap<>();
+    for (int i = 1; i <= changes; i++) {
+      states.put(key(i, META_1), ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON + i));
+    }
+    index.putAll(states);
+
+    assertThat(index.size()).isEqualTo(changes);
+    for (int i = 1; i <= changes; i++) {
+      assertThat(index.lastUpdatedOn(i, META_1)).isEqualTo(LAST_UPDATED_ON + i);
+    }
+    assertThat(index.lastUpdatedOn(changes + 1, META_1)).isEqualTo(HiddenChangesIndex.MISSING);
+  }
+
+  @Test
+  public void shouldReportOnlyTheChangesAddedToTheIndex() {
+    assertThat(
+            index.putAll(
+                ImmutableMap.of(
+                    key(1, META_1), ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON))))
+        .isTrue();
+    assertThat(
+            index.putAll(
+                ImmutableMap.of(
+                    key(1, META_2), ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON))))
+        .isFalse();
+  }
+
+  @Test
+  public void shouldBeWeighedByItsNumberOfChanges() {
+    LoadingCache<Project.NameKey, HiddenChangesIndex> cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(10)
+            .weigher(new HiddenChangesIndex.ChangesWeigher())
+            .build(new HiddenChangesIndex.Loader());
+    HiddenChangesIndex cachedIndex = cache.getUnchecked(PROJECT);
+    Map<ChangeCacheKey, ChangeState> states = new HashMap<>();
+    for (int i = 1; i <= 10; i++) {
+      states.put(key(i, META_1), ChangeState.create(Change.Status.MERGED, LAST_UPDATED_ON));
+    }
+    cachedIndex.putAll(states);
+    cache.asMap().replace(PROJECT, cachedIndex, cachedIndex);
+
+    assertThat(cache.getIfPresent(PROJECT)).isNull();
+  }
+
+  private static ChangeCacheKey key(int changeNum, ObjectId metaRevision) {
+    return ChangeCacheKey.create(Change.id(changeNum), metaRevision, PROJECT);
+  }
+}
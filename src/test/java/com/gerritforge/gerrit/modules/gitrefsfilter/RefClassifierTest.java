@@ -0,0 +1,119 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.gerritforge.gerrit.modules.gitrefsfilter.RefClassifier.Kind;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.RefNames;
+import org.junit.Test;
+
+public class RefClassifierTest {
+
+  @Test
+  public void shouldClassifyPatchSetRef() {
+    assertClassifiedAs("refs/changes/45/12345/7", Kind.PATCH_SET, 12345, 7);
+  }
+
+  @Test
+  public void shouldClassifyMetaRef() {
+    assertClassifiedAs("refs/changes/01/1/meta", Kind.META, 1, 0);
+  }
+
+  @Test
+  public void shouldClassifyRobotCommentsRef() {
+    assertClassifiedAs("refs/changes/01/101/robot-comments", Kind.ROBOT_COMMENTS, 101, 0);
+  }
+
+  @Test
+  public void shouldClassifyAllUsersRefs() {
+    assertClassifiedAs("refs/draft-comments/45/12345/1000000", Kind.DRAFT_COMMENTS, 12345, 0);
+    assertClassifiedAs("refs/starred-changes/45/12345/1000000", Kind.STARRED_CHANGES, 12345, 0);
+  }
+
+  @Test
+  public void shouldClassifyEditRef() {
+    assertClassifiedAs("refs/users/00/1000000/edit-12345/3", Kind.EDIT, 12345, 3);
+  }
+
+  @Test
+  public void shouldClassifyNonChangeRefs() {
+    assertClassifiedAs("refs/heads/master", Kind.BRANCH, 0, 0);
+    assertClassifiedAs("refs/tags/v1.0", Kind.TAG, 0, 0);
+    assertClassifiedAs("refs/users/00/1000000", Kind.USERS, 0, 0);
+    assertClassifiedAs("refs/cache-automerge/01/0123456789", Kind.AUTOMERGE, 0, 0);
+    assertClassifiedAs("refs/sequences/changes", Kind.SEQUENCES, 0, 0);
+    assertClassifiedAs("refs/meta/config", Kind.OTHER, 0, 0);
+    assertClassifiedAs("HEAD", Kind.OTHER, 0, 0);
+  }
+
+  @Test
+  public void shouldNotClassifyMalformedChangeRefsAsChangeRefs() {
+    for (String refName :
+        ImmutableList.of(
+            "refs/changes/01/1",
+            "refs/changes/02/1/1",
+            "refs/changes/1/1/1",
+            "refs/changes/01/01/1",
+            "refs/changes/01/1/01",
+            "refs/changes/01/1/0",
+            "refs/changes/00/0/1",
+            "refs/changes/01/1/foo",
+            "refs/changes/01/1/1/x",
+            "refs/changes/01/1/meta/x",
+            "refs/changes/48/2147483648/1",
+            "refs/changes/01/1/2147483648")) {
+      assertClassifiedAs(refName, Kind.OTHER, 0, 0);
+    }
+    assertClassifiedAs("refs/heads/refs/changes/01/1/1", Kind.BRANCH, 0, 0);
+  }
+
+  @Test
+  public void shouldMatchTheChangeNumbersParsedByGerrit() {
+    for (String refName :
+        ImmutableList.of(
+            "refs/changes/01/1/1",
+            "refs/changes/01/1/meta",
+            "refs/changes/01/1/robot-comments",
+            "refs/changes/99/2147483599/2",
+            "refs/changes/02/1/1",
+            "refs/changes/01/1/foo",
+            "refs/users/00/1000000/edit-1/1",
+            "refs/heads/master")) {
+      long ref = RefClassifier.classify(refName);
+      Kind kind = RefClassifier.kind(ref);
+
+      Change.Id changeId = Change.Id.fromRef(refName);
+      PatchSet.Id patchSetId = PatchSet.Id.fromRef(refName);
+      assertThat(kind.isChangeRef() || kind == Kind.EDIT).isEqualTo(changeId != null);
+      if (changeId != null) {
+        assertThat(RefClassifier.changeNum(ref)).isEqualTo(changeId.get());
+      }
+      assertThat(kind == Kind.PATCH_SET).isEqualTo(patchSetId != null);
+      if (patchSetId != null) {
+        assertThat(RefClassifier.patchSet(ref)).isEqualTo(patchSetId.get());
+      }
+      assertThat(kind == Kind.META || kind == Kind.ROBOT_COMMENTS)
+          .isEqualTo(RefNames.isNoteDbMetaRef(refName));
+    }
+  }
+
+  private static void assertClassifiedAs(String refName, Kind kind, int changeNum, int patchSet) {
+    long ref = RefClassifier.classify(refName);
+    assertThat(RefClassifier.kind(ref)).isEqualTo(kind);
+    assertThat(RefClassifier.changeNum(ref)).isEqualTo(changeNum);
+    assertThat(RefClassifier.patchSet(ref)).isEqualTo(patchSet);
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.gerritforge.gerrit.modules.gitrefsfilter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+public class RefPatternMatcherTest {
+
+  @Test
+  public void shouldShowAllRefsWithoutRules() {
+    RefPatternMatcher matcher = RefPatternMatcher.compile(ImmutableList.of(), ImmutableList.of());
+
+    assertThat(matcher.isShown("refs/heads/master")).isTrue();
+  }
+
+  @Test
+  public void shouldHideRefsByPrefix() {
+    RefPatternMatcher matcher =
+        RefPatternMatcher.compile(ImmutableList.of("refs/backup/"), ImmutableList.of());
+
+    assertThat(matcher.isShown("refs/backup/heads/master")).isFalse();
+    assertThat(matcher.isShown("refs/backup/")).isFalse();
+    assertThat(matcher.isShown("refs/backup")).isTrue();
+    assertThat(matcher.isShown("refs/heads/backup/master")).isTrue();
+  }
+
+  @Test
+  public void shouldApplyLongestMatchingRule() {
+    RefPatternMatcher matcher =
+        RefPatternMatcher.compile(
+            ImmutableList.of("refs/sandbox/", "refs/sandbox/mine/private/"),
+            ImmutableList.of("refs/sandbox/mine/"));
+
+    assertThat(matcher.isShown("refs/sandbox/yours/master")).isFalse();
+    assertThat(matcher.isShown("refs/sandbox/mine/master")).isTrue();
+    assertThat(matcher.isShown("refs/sandbox/mine/private/master")).isFalse();
+  }
+
+  @Test
+  public void shouldPreferShowRuleOnSameLengthMatch() {
+    RefPatternMatcher matcher =
+        RefPatternMatcher.compile(
+            ImmutableList.of("refs/sandbox/"), ImmutableList.of("refs/sandbox/"));
+
+    assertThat(matcher.isShown("refs/sandbox/master")).isTrue();
+  }
+
+  @Test
+  public void shouldMatchGlobWithinOneSegment() {
+    RefPatternMatcher matcher =
+        RefPatternMatcher.compile(
+            ImmutableList.of("refs/teams/*/archive/", "refs/heads/release-*"), ImmutableList.of());
+
+    assertThat(matcher.isShown("refs/teams/foo/archive/master")).isFalse();
+    assertThat(matcher.isShown("refs/teams//archive/master")).isFalse();
+    assertThat(matcher.isShown("refs/teams/foo/bar/archive/master")).isTrue();
+    assertThat(matcher.isShown("refs/teams/foo/master")).isTrue();
+    assertThat(matcher.isShown("refs/heads/release-1.0")).isFalse();
+    assertThat(matcher.isShown("refs/heads/master")).isTrue();
+  }
+
+  @Test
+  public void shouldApplyLongestMatchAcrossGlobAndPrefixRules() {
+    RefPatternMatcher matcher =
+        RefPatternMatcher.compile(
+            ImmutableList.of("refs/teams/"), ImmutableList.of("refs/teams/*/public/"));
+
+    assertThat(matcher.isShown("refs/teams/foo/public/master")).isTrue();
+    assertThat(matcher.isShown("refs/teams/foo/private/master")).isFalse();
+  }
+}
@@ -149,6 +149,50 @@ public abstract class AbstractGitDaemonTest extends AbstractDaemonTest {
     }
   }
 
+  protected void setProjectStaleOpenChangeTime(Project.NameKey project, Duration staleTime)
+      throws IOException, ConfigInvalidException, RepositoryNotFoundException {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(project)) {
+      ProjectConfig projectConfig = projectConfigFactory.create(project);
+      projectConfig.load(md);
+      projectConfig.updatePluginConfig(
+          "gerrit",
+          cfg ->
+              cfg.setLong(
+                  FilterRefsConfig.PROJECT_CONFIG_STALE_OPEN_CHANGE_SEC, staleTime.toSeconds()));
+      projectConfig.commit(md);
+      projectCache.evict(project);
+    }
+  }
+
+  protected void setProjectKeepLastPatchSets(Project.NameKey project, int keepLastPatchSets)
+      throws IOException, ConfigInvalidException, RepositoryNotFoundException {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(project)) {
+      ProjectConfig projectConfig = projectConfigFactory.create(project);
+      projectConfig.load(md);
+      projectConfig.updatePluginConfig(
+          "gerrit",
+          cfg ->
+              cfg.setInt(FilterRefsConfig.PROJECT_CONFIG_KEEP_LAST_PATCH_SETS, keepLastPatchSets));
+      projectConfig.commit(md);
+      projectCache.evict(project);
+    }
+  }
+
+  protected void setProjectMaxAdvertisedChanges(Project.NameKey project, int maxAdvertisedChanges)
+      throws IOException, ConfigInvalidException, RepositoryNotFoundException {
+    try (MetaDataUpdate md = metaDataUpdateFactory.create(project)) {
+      ProjectConfig projectConfig = projectConfigFactory.create(project);
+      projectConfig.load(md);
+      projectConfig.updatePluginConfig(
+          "gerrit",
+          cfg ->
+              cfg.setInt(
+                  FilterRefsConfig.PROJECT_CONFIG_MAX_ADVERTISED_CHANGES, maxAdvertisedChanges));
+      projectConfig.commit(md);
+      projectCache.evict(project);
+    }
+  }
+
   protected String registerAndGetRepoConnection(Project.NameKey p, TestAccount testAccount)
       throws Exception {
     return registerRepoConnection(p, testAccount);
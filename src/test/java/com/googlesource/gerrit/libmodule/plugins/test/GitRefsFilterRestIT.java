@@ -0,0 +1,190 @@
+// Copyright (C) 2025 GerritForge, Inc.
+//
+// Licensed under the BSL 1.1 (the "License");
+// you may not use this file except in compliance with the License.
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.libmodule.plugins.test;
+
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.gerritforge.gerrit.modules.gitrefsfilter.ChangeCacheKey;
+import com.gerritforge.gerrit.modules.gitrefsfilter.ChangeState;
+import com.gerritforge.gerrit.modules.gitrefsfilter.ExportChangeStateSnapshot;
+import com.gerritforge.gerrit.modules.gitrefsfilter.FlushProjectCaches;
+import com.gerritforge.gerrit.modules.gitrefsfilter.GetCacheStats;
+import com.gerritforge.gerrit.modules.gitrefsfilter.WarmChangeStates;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.acceptance.AbstractGitDaemonTest;
+import com.google.gerrit.acceptance.RestResponse;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.json.OutputFormat;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.testing.TestActionRefUpdateContext;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.util.Map;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Test;
+
+public class GitRefsFilterRestIT extends AbstractGitDaemonTest {
+  private static final String EXPORT_URL = "/config/server/" + ExportChangeStateSnapshot.VIEW_NAME;
+  private static final String WARM_URL = "/config/server/" + WarmChangeStates.VIEW_NAME;
+  private static final String STATS_URL = "/config/server/" + GetCacheStats.VIEW_NAME;
+  private static final String FLUSH_URL = "/config/server/" + FlushProjectCaches.VIEW_NAME;
+
+  @Inject private SitePaths sitePaths;
+
+  @Inject
+  private @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
+
+  @Test
+  public void testAdminShouldExportChangeStatesSnapshot() throws Exception {
+    createChange();
+    getChangesRefsAs(admin);
+
+    ExportChangeStateSnapshot.Input input = new ExportChangeStateSnapshot.Input();
+    input.file = "snapshot-test";
+    RestResponse response = adminRestSession.post(EXPORT_URL, input);
+
+    response.assertOK();
+    assertThat(Files.exists(sitePaths.data_dir.resolve("git-refs-filter").resolve(input.file)))
+        .isTrue();
+  }
+
+  @Test
+  public void testAdminShouldNotExportChangeStatesSnapshotOutsideTheSnapshotDirectory()
+      throws Exception {
+    ExportChangeStateSnapshot.Input input = new ExportChangeStateSnapshot.Input();
+    for (String file :
+        ImmutableList.of(
+            "../../etc/gerrit.config",
+            sitePaths.secure_config.toString(),
+            "sub/snapshot-test",
+            "..",
+            "project.states")) {
+      input.file = file;
+      adminRestSession.post(EXPORT_URL, input).assertBadRequest();
+    }
+  }
+
+  @Test
+  public void testUserShouldNotExportChangeStatesSnapshot() throws Exception {
+    userRestSession.post(EXPORT_URL).assertForbidden();
+  }
+
+  @Test
+  public void testAdminShouldWarmChangeStatesOfProject() throws Exception {
+    createChange();
+    createChange();
+
+    WarmChangeStates.Input input = new WarmChangeStates.Input();
+    input.projects = ImmutableList.of(project.get());
+    RestResponse response = adminRestSession.post(WARM_URL, input);
+
+    response.assertOK();
+    Map<String, WarmChangeStates.WarmInfo> infos =
+        readContent(response, new TypeToken<Map<String, WarmChangeStates.WarmInfo>>() {}.getType());
+    WarmChangeStates.WarmInfo info = infos.get(project.get());
+    assertThat(info.changes).isEqualTo(2);
+    assertThat(info.cached + info.loaded).isEqualTo(2);
+    assertThat(info.failed).isEqualTo(0);
+    assertThat(cachedChangesOfProject()).isEqualTo(2);
+  }
+
+  @Test
+  public void testAdminShouldWarmChangeStatesOfProjectWithACorruptChange() throws Exception {
+    createChange();
+    corruptMetaRef(createChange().getChange().getId());
+
+    WarmChangeStates.Input input = new WarmChangeStates.Input();
+    input.projects = ImmutableList.of(project.get());
+    RestResponse response = adminRestSession.post(WARM_URL, input);
+
+    response.assertOK();
+    Map<String, WarmChangeStates.WarmInfo> infos =
+        readContent(response, new TypeToken<Map<String, WarmChangeStates.WarmInfo>>() {}.getType());
+    WarmChangeStates.WarmInfo info = infos.get(project.get());
+    assertThat(info.changes).isEqualTo(2);
+    assertThat(info.cached + info.loaded).isEqualTo(1);
+    assertThat(info.failed).isEqualTo(1);
+  }
+
+  @Test
+  public void testAdminShouldNotWarmMissingProject() throws Exception {
+    WarmChangeStates.Input input = new WarmChangeStates.Input();
+    input.projects = ImmutableList.of("missing-project");
+
+    adminRestSession.post(WARM_URL, input).assertStatus(422);
+  }
+
+  @Test
+  public void testAdminShouldGetCacheStatsPerProject() throws Exception {
+    createChange();
+    getChangesRefsAs(admin);
+
+    RestResponse response = adminRestSession.get(STATS_URL);
+
+    response.assertOK();
+    Map<String, GetCacheStats.CacheStatsInfo> stats =
+        readContent(
+            response, new TypeToken<Map<String, GetCacheStats.CacheStatsInfo>>() {}.getType());
+    assertThat(stats.get(CHANGE_STATE_CACHE).projects).containsEntry(project.get(), 1L);
+  }
+
+  @Test
+  public void testAdminShouldFlushCachesOfProject() throws Exception {
+    createChange();
+    getChangesRefsAs(admin);
+    assertThat(cachedChangesOfProject()).isEqualTo(1);
+
+    FlushProjectCaches.Input input = new FlushProjectCaches.Input();
+    input.project = project.get();
+    RestResponse response = adminRestSession.post(FLUSH_URL, input);
+
+    response.assertOK();
+    Map<String, Integer> flushed =
+        readContent(response, new TypeToken<Map<String, Integer>>() {}.getType());
+    assertThat(flushed).containsEntry(CHANGE_STATE_CACHE, 1);
+    assertThat(cachedChangesOfProject()).isEqualTo(0);
+  }
+
+  @Test
+  public void testUserShouldNotUseCacheAdminEndpoints() throws Exception {
+    userRestSession.post(WARM_URL).assertForbidden();
+    userRestSession.get(STATS_URL).assertForbidden();
+    userRestSession.post(FLUSH_URL).assertForbidden();
+  }
+
+  /** Points the meta-ref of the change at the project HEAD, which is not a NoteDb commit. */
+  private void corruptMetaRef(Change.Id changeId) throws Exception {
+    try (Repository r = repoManager.openRepository(project);
+        TestActionRefUpdateContext ctx = TestActionRefUpdateContext.openTestRefUpdateContext()) {
+      RefUpdate ru = r.updateRef(RefNames.changeMetaRef(changeId));
+      ru.setNewObjectId(r.exactRef("HEAD").getObjectId());
+      assertThat(ru.forceUpdate()).isEqualTo(RefUpdate.Result.FORCED);
+    }
+  }
+
+  private long cachedChangesOfProject() {
+    return changeStateCache.asMap().keySet().stream()
+        .filter(key -> key.project().equals(project))
+        .count();
+  }
+
+  private static <T> T readContent(RestResponse response, Type type) throws Exception {
+    return OutputFormat.JSON.newGson().fromJson(response.getReader(), type);
+  }
+}
@@ -13,29 +13,49 @@ package com.googlesource.gerrit.libmodule.plugins.test;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.acceptance.WaitUtil.waitUntil;
-import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangesTsCache.CHANGES_CACHE_TS;
-import static com.gerritforge.gerrit.modules.gitrefsfilter.OpenChangesCache.OPEN_CHANGES_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateCache.CHANGE_STATE_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.FilterRefsCapabilityCache.FILTER_REFS_CAPABILITY_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache.FILTERED_REFS_CACHE;
+import static com.gerritforge.gerrit.modules.gitrefsfilter.ProjectSettingsCache.PROJECT_SETTINGS_CACHE;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.gerrit.acceptance.AbstractGitDaemonTest;
 import com.google.gerrit.acceptance.GitUtil;
 import com.google.gerrit.acceptance.NoHttpd;
 import com.google.gerrit.acceptance.Sandboxed;
+import com.google.gerrit.acceptance.TestMetricMaker;
 import com.google.gerrit.acceptance.TestAccount;
 import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
+import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.BranchNameKey;
 import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.testing.ConfigSuite;
+import com.google.gerrit.testing.TestActionRefUpdateContext;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.gerritforge.gerrit.modules.gitrefsfilter.ChangeCacheKey;
+import com.gerritforge.gerrit.modules.gitrefsfilter.ChangeState;
+import com.gerritforge.gerrit.modules.gitrefsfilter.ChangeStateSnapshot;
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilterRefsConfig;
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilterRefsMetrics.HideReason;
+import com.gerritforge.gerrit.modules.gitrefsfilter.FilteredRefsCache;
+import com.gerritforge.gerrit.modules.gitrefsfilter.ProjectSettings;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -44,7 +64,9 @@ import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.junit.TestRepository;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.util.FS;
@@ -55,12 +77,23 @@ import org.junit.Test;
 @Sandboxed
 public class GitRefsFilterTest extends AbstractGitDaemonTest {
   @Inject private RequestScopeOperations requestScopeOperations;
+  @Inject private TestMetricMaker testMetricMaker;
+  @Inject private SitePaths sitePaths;
+  @Inject private ChangeStateSnapshot changeStateSnapshot;
 
   @Inject
-  private @Named(OPEN_CHANGES_CACHE) LoadingCache<ChangeCacheKey, Boolean> changeOpenCache;
+  private @Named(CHANGE_STATE_CACHE) LoadingCache<ChangeCacheKey, ChangeState> changeStateCache;
 
   @Inject
-  private @Named(CHANGES_CACHE_TS) LoadingCache<ChangeCacheKey, Long> changesTsCache;
+  private @Named(FILTERED_REFS_CACHE) Cache<FilteredRefsCache.Key, FilteredRefsCache.FilteredRefs>
+      filteredRefsCache;
+
+  @Inject
+  private @Named(PROJECT_SETTINGS_CACHE) LoadingCache<Project.NameKey, ProjectSettings>
+      projectSettingsCache;
+
+  @Inject
+  private @Named(FILTER_REFS_CAPABILITY_CACHE) LoadingCache<Account.Id, Boolean> capabilityCache;
 
   private static final int CLOSED_CHANGES_GRACE_TIME_SEC = 5;
 
@@ -69,6 +102,29 @@ public class GitRefsFilterTest extends AbstractGitDaemonTest {
 
   private volatile Exception getRefsException = null;
 
+  @ConfigSuite.Default
+  public static Config defaultConfig() {
+    Config cfg = new Config();
+    // Warm the change_state cache only in the tests that expect it
+    cfg.setInt(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_CACHE_WARMER_THREADS,
+        0);
+    return cfg;
+  }
+
+  @ConfigSuite.Config
+  public static Config pruneBeforeAcl() {
+    Config cfg = defaultConfig();
+    cfg.setBoolean(
+        FilterRefsConfig.SECTION_GIT_REFS_FILTER,
+        null,
+        FilterRefsConfig.KEY_PRUNE_BEFORE_ACL,
+        true);
+    return cfg;
+  }
+
   @Before
   public void setup() throws Exception {
     createFilteredRefsGroup();
@@ -91,6 +147,65 @@ public class GitRefsFilterTest extends AbstractGitDaemonTest {
     assertThat(changeTs.before(filterCutoffTs)).isTrue();
   }
 
+  @Test
+  @GerritConfig(name = "git-refs-filter.filterTimeBudget", value = "1 min")
+  public void testUserWithFilterOutCapabilityShouldNotSeeAbandonedChangesRefsWithinTimeBudget()
+      throws Exception {
+    createChangeAndAbandon();
+
+    waitUntil(() -> getRefsUnchecked(user).isEmpty(), TEST_PATIENCE_TIME);
+    checkGetRefsIsSuccessful();
+    assertThat(testMetricMaker.getCount("git_refs_filter/time_budget/exceeded")).isEqualTo(0L);
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.changeStateStore", value = "mmap")
+  public void testShouldKeepChangeStatesInTheStoreWhenEnabled() throws Exception {
+    createChangeAndAbandon();
+    waitUntil(() -> getRefsUnchecked(user).isEmpty(), TEST_PATIENCE_TIME);
+    checkGetRefsIsSuccessful();
+
+    assertThat(
+            Files.exists(
+                sitePaths.data_dir.resolve("git-refs-filter").resolve(project.get() + ".states")))
+        .isTrue();
+    Map<ChangeCacheKey, ChangeState> cachedStates = new HashMap<>(changeStateCache.asMap());
+    assertThat(cachedStates).isNotEmpty();
+    changeStateCache.invalidateAll();
+    for (Map.Entry<ChangeCacheKey, ChangeState> cachedState : cachedStates.entrySet()) {
+      assertThat(changeStateCache.get(cachedState.getKey())).isEqualTo(cachedState.getValue());
+    }
+  }
+
+  @Test
+  public void testShouldImportOnlyCurrentChangeStatesFromSnapshot() throws Exception {
+    createChangeAndAbandon();
+    String changeId = createChange().getChangeId();
+    getRefs(cloneProjectChangesRefs(user));
+    assertThat(changeStateCache.asMap()).hasSize(2);
+
+    Path snapshotFile = sitePaths.data_dir.resolve("change_state.snapshot");
+    assertThat(changeStateSnapshot.exportTo(snapshotFile)).isEqualTo(2);
+
+    changeStateCache.invalidateAll();
+    amendChange(changeId);
+    assertThat(changeStateSnapshot.importFrom(snapshotFile)).isEqualTo(1);
+    assertThat(changeStateCache.asMap()).hasSize(1);
+    assertThat(changeStateCache.asMap().values().iterator().next().isOpen()).isFalse();
+  }
+
+  @Test
+  public void testUserWithFilterOutCapabilityShouldSeeRestoredChangesRefs() throws Exception {
+    int changeNum = createChangeAndAbandon();
+    waitUntil(() -> getRefsUnchecked(user).isEmpty(), TEST_PATIENCE_TIME);
+    checkGetRefsIsSuccessful();
+
+    requestScopeOperations.setApiUser(admin.id());
+    gApi.changes().id(changeNum).restore();
+
+    assertThat(getRefs(cloneProjectChangesRefs(user))).isNotEmpty();
+  }
+
   @Test
   public void testUserWithFilterOutCapabilityShouldSeeJustClosedChangesRefs() throws Exception {
     createChangeAndAbandon();
@@ -160,29 +275,326 @@ public class GitRefsFilterTest extends AbstractGitDaemonTest {
 
     getRefs(cloneProjectChangesRefs(user));
 
-    assertThat(changeOpenCache.asMap().size()).isEqualTo(1);
+    assertThat(changeStateCache.asMap().size()).isEqualTo(1);
 
-    Map.Entry<ChangeCacheKey, Boolean> cacheEntry =
-        new ArrayList<>(changeOpenCache.asMap().entrySet()).get(0);
+    Map.Entry<ChangeCacheKey, ChangeState> cacheEntry =
+        new ArrayList<>(changeStateCache.asMap().entrySet()).get(0);
 
     assertThat(cacheEntry.getKey().project()).isEqualTo(project);
     assertThat(cacheEntry.getKey().changeId()).isEqualTo(changeId);
     assertThat(cacheEntry.getKey().changeRevision()).isEqualTo(metaRef.getObjectId());
-    assertThat(cacheEntry.getKey().repo()).isNotNull();
-    assertThat(cacheEntry.getValue()).isFalse();
+    assertThat(cacheEntry.getValue().status()).isEqualTo(Change.Status.ABANDONED);
+    assertThat(cacheEntry.getValue().isOpen()).isFalse();
+  }
+
+  @Test
+  public void testShouldCacheAllChangesStatesInOneFetch() throws Exception {
+    requestScopeOperations.setApiUser(admin.id());
+    gApi.changes().id(createChange().getChangeId()).abandon();
+    gApi.changes().id(createChange().getChangeId()).abandon();
+    createChange();
+
+    getRefs(cloneProjectChangesRefs(user));
+
+    assertThat(changeStateCache.asMap().size()).isEqualTo(3);
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.sequentialThreshold", value = "0")
+  @GerritConfig(name = "git-refs-filter.parallelism", value = "2")
+  public void testShouldCacheAllChangesStatesInParallel() throws Exception {
+    requestScopeOperations.setApiUser(admin.id());
+    gApi.changes().id(createChange().getChangeId()).abandon();
+    gApi.changes().id(createChange().getChangeId()).abandon();
+    createChange();
+
+    assertThat(getRefs(cloneProjectChangesRefs(user))).isNotEmpty();
+    assertThat(changeStateCache.asMap().size()).isEqualTo(3);
+  }
+
+  @Test
+  public void testShouldReuseFilteredRefsOfUnchangedProject() throws Exception {
+    createChange();
+
+    assertThat(getRefs(cloneProjectChangesRefs(user))).hasSize(1);
+    assertThat(filteredRefsCache.size()).isGreaterThan(0L);
+
+    changeStateCache.invalidateAll();
+
+    assertThat(getRefs(cloneProjectChangesRefs(user))).hasSize(1);
+    assertThat(changeStateCache.asMap()).isEmpty();
+  }
+
+  @Test
+  public void testShouldFilterAgainWhenProjectRefsChange() throws Exception {
+    createChange();
+    assertThat(getRefs(cloneProjectChangesRefs(user))).hasSize(1);
+
+    createChange();
+    assertThat(getRefs(cloneProjectChangesRefs(user))).hasSize(2);
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.nightly.group", value = "Registered Users")
+  @GerritConfig(name = "git-refs-filter.nightly.closedChangesGraceTimeSec", value = "0")
+  public void testUserWithFilterOutCapabilityShouldUseTheGraceTimeOfItsProfile() throws Exception {
+    createChangeAndAbandon();
+
+    waitUntil(() -> getRefsUnchecked(user).isEmpty(), Duration.ofSeconds(2));
+    checkGetRefsIsSuccessful();
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.nightly.group", value = "Administrators")
+  @GerritConfig(name = "git-refs-filter.nightly.closedChangesGraceTimeSec", value = "0")
+  public void testUserWithFilterOutCapabilityShouldIgnoreProfilesOfOtherGroups() throws Exception {
+    createChangeAndAbandon();
+
+    assertThat(getRefs(cloneProjectChangesRefs(user))).isNotEmpty();
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.nightly.group", value = "global:Registered-Users")
+  @GerritConfig(name = "git-refs-filter.nightly.hideRefs", value = "refs/heads/sandbox/")
+  public void testUserWithFilterOutCapabilityShouldUseTheHideRefsOfItsProfile() throws Exception {
+    String sandboxPrefix = "refs/heads/sandbox/";
+    requestScopeOperations.setApiUser(admin.id());
+    createBranch(BranchNameKey.create(project, "sandbox/foo"));
+
+    assertThat(getRefs(cloneProjectRefs(admin, "+refs/heads/*:refs/heads/*"), sandboxPrefix))
+        .isNotEmpty();
+    assertThat(getRefs(cloneProjectRefs(user, "+refs/heads/*:refs/heads/*"), sandboxPrefix))
+        .isEmpty();
+  }
+
+  @Test
+  public void testShouldApplyUpdatedClosedChangesGraceTime() throws Exception {
+    createChangeAndAbandon();
+    assertThat(getRefs(cloneProjectChangesRefs(user))).isNotEmpty();
+
+    setProjectClosedChangesGraceTime(project, Duration.ZERO);
+
+    waitUntil(() -> getRefsUnchecked(user).isEmpty(), TEST_PATIENCE_TIME);
+    checkGetRefsIsSuccessful();
+  }
+
+  @Test
+  public void testUserWithFilterOutCapabilityShouldNotSeeStaleOpenChangesRefs() throws Exception {
+    createChange();
+    assertThat(getRefs(cloneProjectChangesRefs(user))).isNotEmpty();
+
+    setProjectStaleOpenChangeTime(project, Duration.ofSeconds(1));
+
+    waitUntil(() -> getRefsUnchecked(user).isEmpty(), TEST_PATIENCE_TIME);
+    checkGetRefsIsSuccessful();
+    assertThat(getRefs(cloneProjectChangesRefs(admin))).isNotEmpty();
+  }
+
+  @Test
+  public void testUserWithFilterOutCapabilityShouldSeeOnlyLastPatchSetsOfOpenChanges()
+      throws Exception {
+    setProjectKeepLastPatchSets(project, 1);
+    String changeId = createChange().getChangeId();
+    amendChange(changeId);
+    amendChange(changeId);
+
+    assertThat(getRefs(cloneProjectChangesRefs(admin))).hasSize(4);
+    testMetricMaker.reset();
+    List<Ref> userRefs = getRefs(cloneProjectChangesRefs(user));
+    assertThat(userRefs).hasSize(1);
+    assertThat(userRefs.get(0).getName()).endsWith("/3");
+    assertThat(testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.OLD_PATCH_SETS))
+        .isEqualTo(2L);
+  }
+
+  @Test
+  public void testUserWithFilterOutCapabilityShouldSeeOnlyLatestChanges() throws Exception {
+    setProjectMaxAdvertisedChanges(project, 2);
+    createChange();
+    int secondChangeNum = createChange().getChange().getId().get();
+    int thirdChangeNum = createChange().getChange().getId().get();
+
+    assertThat(getRefs(cloneProjectChangesRefs(admin))).hasSize(6);
+    testMetricMaker.reset();
+    List<Ref> userRefs = getRefs(cloneProjectChangesRefs(user));
+    assertThat(userRefs.stream().map(this::changeNumOfRef).collect(Collectors.toList()))
+        .containsExactly(secondChangeNum, thirdChangeNum);
+    assertThat(
+            testMetricMaker.getCount(
+                "git_refs_filter/hidden_refs", HideReason.MAX_ADVERTISED_CHANGES))
+        .isEqualTo(1L);
+  }
+
+  @Test
+  public void testShouldKeepAllPatchSetsOfClosedChangesWithinGracePeriod() throws Exception {
+    setProjectKeepLastPatchSets(project, 1);
+    String changeId = createChange().getChangeId();
+    amendChange(changeId);
+    requestScopeOperations.setApiUser(admin.id());
+    gApi.changes().id(changeId).abandon();
+
+    assertThat(getRefs(cloneProjectChangesRefs(user))).hasSize(2);
+  }
+
+  @Test
+  public void testShouldInvalidateProjectSettingsWhenParentConfigIsUpdated() throws Exception {
+    getRefs(cloneProjectChangesRefs(user));
+    assertThat(projectSettingsCache.getIfPresent(project)).isNotNull();
+
+    setProjectClosedChangesGraceTime(
+        allProjects, Duration.ofSeconds(CLOSED_CHANGES_GRACE_TIME_SEC));
+
+    assertThat(projectSettingsCache.getIfPresent(project)).isNull();
+  }
+
+  @Test
+  public void testShouldMemoizeFilterRefsCapabilityPerAccount() throws Exception {
+    getRefs(cloneProjectChangesRefs(user));
+    getRefs(cloneProjectChangesRefs(admin));
+
+    assertThat(capabilityCache.getIfPresent(user.id())).isTrue();
+    assertThat(capabilityCache.getIfPresent(admin.id())).isFalse();
+  }
+
+  @Test
+  public void testShouldInvalidateFilterRefsCapabilityWhenGroupMembersChange() throws Exception {
+    getRefs(cloneProjectChangesRefs(user));
+    assertThat(capabilityCache.getIfPresent(user.id())).isTrue();
+
+    requestScopeOperations.setApiUser(admin.id());
+    gApi.groups().id(name("filtered-refs-group")).removeMembers(user.username());
+
+    assertThat(capabilityCache.getIfPresent(user.id())).isNull();
+    getRefs(cloneProjectChangesRefs(user));
+    assertThat(capabilityCache.getIfPresent(user.id())).isFalse();
+  }
+
+  @Test
+  public void testShouldCountHiddenRefsPerReason() throws Exception {
+    createChange();
+    int changeNum = changeNumOfRef(getChangesRefsAs(admin).get(0));
+    gApi.changes().id(changeNum).edit().create();
+    testMetricMaker.reset();
+
+    fetchAllRefs(user);
+
+    assertThat(testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.META))
+        .isAtLeast(1L);
+    assertThat(testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.USERS))
+        .isAtLeast(1L);
+    assertThat(testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.CLOSED))
+        .isEqualTo(0L);
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.pruneBeforeAcl", value = "true")
+  @GerritConfig(
+      name = "git-refs-filter.hideRefKinds",
+      values = {"draft-comments", "sequences"})
+  public void testShouldHideAuxiliaryRefKinds() throws Exception {
+    createChange();
+    ImmutableList<String> auxiliaryRefs = createAuxiliaryRefs();
+    testMetricMaker.reset();
+
+    assertThat(fetchAllRefs(user).collect(Collectors.toList())).containsNoneIn(auxiliaryRefs);
+    assertThat(testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.AUXILIARY))
+        .isEqualTo((long) auxiliaryRefs.size());
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.pruneBeforeAcl", value = "true")
+  public void testShouldNotHideAuxiliaryRefKindsByDefault() throws Exception {
+    createChange();
+    String draftCommentsRef = createAuxiliaryRefs().get(0);
+    testMetricMaker.reset();
+
+    assertThat(fetchAllRefs(user).collect(Collectors.toList())).contains(draftCommentsRef);
+    assertThat(testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.AUXILIARY))
+        .isEqualTo(0L);
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.pruneBeforeAcl", value = "true")
+  @GerritConfig(name = "git-refs-filter.hideRefKinds", value = "sequences")
+  public void testShouldHideOnlyConfiguredAuxiliaryRefKinds() throws Exception {
+    createChange();
+    ImmutableList<String> auxiliaryRefs = createAuxiliaryRefs();
+    String draftCommentsRef = auxiliaryRefs.get(0);
+    String sequencesRef = auxiliaryRefs.get(1);
+    testMetricMaker.reset();
+
+    List<String> refs = fetchAllRefs(user).collect(Collectors.toList());
+
+    assertThat(refs).contains(draftCommentsRef);
+    assertThat(refs).doesNotContain(sequencesRef);
+    assertThat(testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.AUXILIARY))
+        .isEqualTo(1L);
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.pruneBeforeAcl", value = "true")
+  public void testShouldHideCorruptChangesLikeClosedOnes() throws Exception {
+    setProjectClosedChangesGraceTime(project, Duration.ZERO);
+    corruptMetaRef(createChange().getChange().getId());
+    testMetricMaker.reset();
+
+    waitUntil(
+        () -> {
+          fetchAllRefsUnchecked(user);
+          return testMetricMaker.getCount("git_refs_filter/hidden_refs", HideReason.CORRUPT) > 0;
+        },
+        TEST_PATIENCE_TIME);
+    checkGetRefsIsSuccessful();
+
+    assertThat(testMetricMaker.getCount("git_refs_filter/change_state/corrupt_changes"))
+        .isEqualTo(1L);
+    assertThat(testMetricMaker.getCount("git_refs_filter/change_state/load_failures"))
+        .isEqualTo(1L);
   }
 
   @Test
-  public void testShouldCacheChangeKeyContainRepoAfterDeserializing() throws Exception {
+  @GerritConfig(name = "git-refs-filter.pruneBeforeAcl", value = "true")
+  public void testShouldCacheTheStatesBulkLoadedWithACorruptChange() throws Exception {
     Change.Id changeId = Change.id(createChangeAndAbandon());
+    corruptMetaRef(createChange().getChange().getId());
+    testMetricMaker.reset();
+
     getRefs(cloneProjectChangesRefs(user));
 
-    assertThat(changeOpenCache.asMap().size()).isEqualTo(1);
+    assertThat(changeStateCache.asMap().keySet().stream().map(ChangeCacheKey::changeId))
+        .containsExactly(changeId);
+    assertThat(testMetricMaker.getCount("git_refs_filter/change_state/load_failures"))
+        .isEqualTo(1L);
+  }
+
+  @Test
+  @GerritConfig(name = "git-refs-filter.pruneBeforeAcl", value = "true")
+  public void testShouldHideClosedChangesLoadedWhileTheChangesOfTheChunkGrow() throws Exception {
+    setProjectClosedChangesGraceTime(project, Duration.ZERO);
+    Change.Id changeId = Change.id(createChangeAndAbandon());
+    createRobotCommentsRefs(changeId, 1_100);
+    String patchSetRef = RefNames.patchSetRef(PatchSet.id(changeId, 1));
 
-    Map.Entry<ChangeCacheKey, Boolean> cacheEntry =
-        new ArrayList<>(changeOpenCache.asMap().entrySet()).get(0);
+    waitUntil(
+        () -> getRefsUnchecked(user).stream().noneMatch(ref -> ref.getName().equals(patchSetRef)),
+        TEST_PATIENCE_TIME);
+    checkGetRefsIsSuccessful();
+  }
 
-    assertThat(cacheEntry.getKey().repo()).isNotNull();
+  @Test
+  @GerritConfig(name = "git-refs-filter.cacheWarmerThreads", value = "1")
+  public void testShouldWarmChangeStateWhenMetaRefIsUpdated() throws Exception {
+    Change.Id changeId = Change.id(createChangeAndAbandon());
+    ObjectId metaId = getMetaId(changeId).getObjectId();
+
+    waitUntil(
+        () ->
+            changeStateCache.asMap().entrySet().stream()
+                .anyMatch(
+                    e ->
+                        metaId.equals(e.getKey().changeRevision())
+                            && e.getValue().status() == Change.Status.ABANDONED),
+        TEST_PATIENCE_TIME);
   }
 
   @Test
@@ -194,33 +606,34 @@ public class GitRefsFilterTest extends AbstractGitDaemonTest {
 
     Change.Id changeId = Change.id(changeNumOfRef(refs.get(0)));
 
-    assertThat(changeOpenCache.asMap().size()).isEqualTo(1);
+    assertThat(changeStateCache.asMap().size()).isEqualTo(1);
 
-    Map.Entry<ChangeCacheKey, Boolean> cacheEntry =
-        new ArrayList<>(changeOpenCache.asMap().entrySet()).get(0);
+    Map.Entry<ChangeCacheKey, ChangeState> cacheEntry =
+        new ArrayList<>(changeStateCache.asMap().entrySet()).get(0);
 
     assertThat(cacheEntry.getKey().project()).isEqualTo(project);
     assertThat(cacheEntry.getKey().changeId()).isEqualTo(changeId);
     assertThat(cacheEntry.getKey().changeRevision()).isEqualTo(getMetaId(changeId).getObjectId());
-    assertThat(cacheEntry.getValue()).isTrue();
+    assertThat(cacheEntry.getValue().status()).isEqualTo(Change.Status.NEW);
+    assertThat(cacheEntry.getValue().isOpen()).isTrue();
   }
 
   @Test
-  public void testShouldCacheChangeTsWhenAbandoned() throws Exception {
+  public void testShouldCacheChangeLastUpdatedOnWhenAbandoned() throws Exception {
     Change.Id changeId = Change.id(createChangeAndAbandon());
     Ref metaRef = getMetaId(changeId);
 
     getRefs(cloneProjectChangesRefs(user));
 
-    assertThat(changesTsCache.asMap().size()).isEqualTo(1);
+    assertThat(changeStateCache.asMap().size()).isEqualTo(1);
 
-    Map.Entry<ChangeCacheKey, Long> cacheEntry =
-        new ArrayList<>(changesTsCache.asMap().entrySet()).get(0);
+    Map.Entry<ChangeCacheKey, ChangeState> cacheEntry =
+        new ArrayList<>(changeStateCache.asMap().entrySet()).get(0);
 
     assertThat(cacheEntry.getKey().project()).isEqualTo(project);
     assertThat(cacheEntry.getKey().changeId()).isEqualTo(changeId);
     assertThat(cacheEntry.getKey().changeRevision()).isEqualTo(metaRef.getObjectId());
-    assertThat(cacheEntry.getValue())
+    assertThat(cacheEntry.getValue().lastUpdatedOn())
         .isEqualTo(gApi.changes().id(changeId.get()).get().updated.getTime());
   }
 
@@ -233,6 +646,14 @@ public class GitRefsFilterTest extends AbstractGitDaemonTest {
     }
   }
 
+  private void fetchAllRefsUnchecked(TestAccount user) {
+    try {
+      fetchAllRefs(user);
+    } catch (Exception e) {
+      getRefsException = e;
+    }
+  }
+
   private void checkGetRefsIsSuccessful() throws Exception {
     if (getRefsException != null) {
       throw getRefsException;
@@ -261,6 +682,57 @@ public class GitRefsFilterTest extends AbstractGitDaemonTest {
     return repo.getRepository().getRefDatabase().getRefsByPrefix(prefix);
   }
 
+  /**
+   * Creates a draft-comments ref of {@code user} and a sequences ref pointing at the project HEAD.
+   */
+  private ImmutableList<String> createAuxiliaryRefs() throws Exception {
+    ImmutableList<String> auxiliaryRefs =
+        ImmutableList.of(
+            RefNames.refsDraftComments(Change.id(1), user.id()), "refs/sequences/test");
+    try (Repository r = repoManager.openRepository(project);
+        TestActionRefUpdateContext ctx = TestActionRefUpdateContext.openTestRefUpdateContext()) {
+      ObjectId head = r.exactRef("HEAD").getObjectId();
+      for (String refName : auxiliaryRefs) {
+        RefUpdate ru = r.updateRef(refName);
+        ru.setNewObjectId(head);
+        assertThat(ru.forceUpdate()).isEqualTo(RefUpdate.Result.NEW);
+      }
+    }
+    return auxiliaryRefs;
+  }
+
+  /**
+   * Creates the robot-comments refs of {@code count} changes without a meta-ref, listed after the
+   * refs of {@code changeId}, so that they are added to the changes of the filter in the same chunk
+   * after the state of {@code changeId} is requested.
+   */
+  private void createRobotCommentsRefs(Change.Id changeId, int count) throws Exception {
+    String changeRefPrefix = RefNames.changeRefPrefix(changeId);
+    try (Repository r = repoManager.openRepository(project);
+        TestActionRefUpdateContext ctx = TestActionRefUpdateContext.openTestRefUpdateContext()) {
+      ObjectId head = r.exactRef("HEAD").getObjectId();
+      for (int changeNum = changeId.get() + 1; count > 0; changeNum++) {
+        String refName = RefNames.changeRefPrefix(Change.id(changeNum)) + "robot-comments";
+        if (refName.compareTo(changeRefPrefix) > 0) {
+          RefUpdate ru = r.updateRef(refName);
+          ru.setNewObjectId(head);
+          assertThat(ru.forceUpdate()).isEqualTo(RefUpdate.Result.NEW);
+          count--;
+        }
+      }
+    }
+  }
+
+  /** Points the meta-ref of the change at the project HEAD, which is not a NoteDb commit. */
+  private void corruptMetaRef(Change.Id changeId) throws Exception {
+    try (Repository r = repoManager.openRepository(project);
+        TestActionRefUpdateContext ctx = TestActionRefUpdateContext.openTestRefUpdateContext()) {
+      RefUpdate ru = r.updateRef(RefNames.changeMetaRef(changeId));
+      ru.setNewObjectId(r.exactRef("HEAD").getObjectId());
+      assertThat(ru.forceUpdate()).isEqualTo(RefUpdate.Result.FORCED);
+    }
+  }
+
   private Ref getMetaId(Change.Id changeId) throws Exception {
     try (Repository r = repoManager.openRepository(project)) {
       return r.exactRef(RefNames.changeMetaRef(changeId));